@@ -0,0 +1,121 @@
+package searchclient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/*
+    Loads levels from the levels directory for the benchmarks.
+
+    The directory is taken from the searchclient.levels system property, and otherwise looked up relative to
+    the working directory, so the benchmarks can be started from searchclient_java or searchclient_java/benchmarks.
+*/
+final class BenchmarkLevels
+{
+    private BenchmarkLevels()
+    {
+    }
+
+    static State load(String name)
+    throws IOException
+    {
+        return LevelPreprocessor.preprocess(LevelParser.parse(levelsDirectory().resolve(name + ".lvl")));
+    }
+
+    // Writes a square level of the given size to a temporary file: a single agent, scattered walls, and boxes and
+    // goals of all 26 letters.
+    static Path synthetic(int size)
+    throws IOException
+    {
+        StringBuilder level = new StringBuilder(2 * (size + 1) * (size + 1) + 256);
+        level.append("#domain\nhospital\n#levelname\nsynthetic").append(size).append("\n#colors\nblue: 0");
+        for (char box = 'A'; box <= 'Z'; ++box)
+        {
+            level.append(", ").append(box);
+        }
+        level.append("\n#initial\n");
+        appendGrid(level, size, true);
+        level.append("#goal\n");
+        appendGrid(level, size, false);
+        level.append("#end\n");
+
+        Path file = Files.createTempFile("synthetic" + size + "-", ".lvl");
+        file.toFile().deleteOnExit();
+        Files.write(file, level.toString().getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    private static void appendGrid(StringBuilder level, int size, boolean initial)
+    {
+        for (int row = 0; row < size; ++row)
+        {
+            for (int col = 0; col < size; ++col)
+            {
+                boolean border = row == 0 || col == 0 || row == size - 1 || col == size - 1;
+                int pattern = row * 31 + col * 17;
+                char c = ' ';
+                if (border || pattern % 11 == 0)
+                {
+                    c = '+';
+                }
+                else if (initial && row == 1 && col == 1)
+                {
+                    c = '0';
+                }
+                else if (pattern % 13 == (initial ? 1 : 2))
+                {
+                    c = (char) ('A' + (row + col) % 26);
+                }
+                level.append(c);
+            }
+            level.append('\n');
+        }
+    }
+
+    // Returns up to count distinct states in breadth-first order from the initial state,
+    // so the benchmarks work on states that a search would actually visit.
+    static ArrayList<State> sample(State initialState, int count)
+    {
+        ArrayList<State> states = new ArrayList<>(count);
+        ArrayDeque<State> queue = new ArrayDeque<>();
+        HashSet<State> seen = new HashSet<>();
+        queue.add(initialState);
+        seen.add(initialState);
+        while (!queue.isEmpty() && states.size() < count)
+        {
+            State state = queue.poll();
+            states.add(state);
+            for (State child : state.getExpandedStates())
+            {
+                if (seen.add(child))
+                {
+                    queue.add(child);
+                }
+            }
+        }
+        return states;
+    }
+
+    private static Path levelsDirectory()
+    {
+        String property = System.getProperty("searchclient.levels");
+        if (property != null)
+        {
+            return Paths.get(property);
+        }
+        for (String candidate : new String[]{"../levels", "../../levels", "levels"})
+        {
+            Path path = Paths.get(candidate);
+            if (Files.isDirectory(path))
+            {
+                return path;
+            }
+        }
+        throw new IllegalStateException("Levels directory not found, set -Dsearchclient.levels=<dir>.");
+    }
+}
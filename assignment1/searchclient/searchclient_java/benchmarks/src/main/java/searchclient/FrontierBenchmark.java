@@ -0,0 +1,87 @@
+package searchclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+    Frontier operations: each invocation adds a batch of sampled states to an empty frontier,
+    checks contains() for each of them and pops them all again. Scores are per state.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontierBenchmark
+{
+    private static final int BATCH = 4096;
+
+    @Param({"SAsoko3_64", "MAmultiagentSort"})
+    public String level;
+
+    @Param({"bfs", "dfs", "greedy", "astar"})
+    public String strategy;
+
+    private ArrayList<searchclient.State> states;
+    private searchclient.State initialState;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    throws IOException
+    {
+        this.initialState = BenchmarkLevels.load(this.level);
+        this.states = BenchmarkLevels.sample(this.initialState, BATCH);
+    }
+
+    private Frontier newFrontier()
+    {
+        switch (this.strategy)
+        {
+            case "dfs":
+                return new FrontierDFS();
+            case "greedy":
+                return new FrontierBestFirst(new HeuristicGreedy(this.initialState));
+            case "astar":
+                return new FrontierBestFirst(new HeuristicAStar(this.initialState));
+            default:
+                return new FrontierBFS();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int addContainsPop()
+    {
+        Frontier frontier = this.newFrontier();
+        int found = 0;
+        for (searchclient.State state : this.states)
+        {
+            frontier.add(state);
+        }
+        for (searchclient.State state : this.states)
+        {
+            found += frontier.contains(state) ? 1 : 0;
+        }
+        while (!frontier.isEmpty())
+        {
+            found += frontier.pop().g();
+        }
+        return found;
+    }
+}
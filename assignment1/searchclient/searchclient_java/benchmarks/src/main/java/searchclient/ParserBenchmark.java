@@ -0,0 +1,63 @@
+package searchclient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+    Parsing a synthetic square level of the given size, with the line-based SearchClient.parseLevel and with the
+    byte-level LevelParser over a memory-mapped file.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark
+{
+    @Param({"100", "1000", "3000"})
+    public int size;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    throws IOException
+    {
+        this.file = BenchmarkLevels.synthetic(this.size);
+    }
+
+    @Benchmark
+    public searchclient.State readLines()
+    throws IOException
+    {
+        try (BufferedReader reader = Files.newBufferedReader(this.file, StandardCharsets.US_ASCII))
+        {
+            return SearchClient.parseLevel(reader);
+        }
+    }
+
+    @Benchmark
+    public searchclient.State mappedBytes()
+    throws IOException
+    {
+        return LevelParser.parse(this.file);
+    }
+}
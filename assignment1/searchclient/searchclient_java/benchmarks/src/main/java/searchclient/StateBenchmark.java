@@ -0,0 +1,93 @@
+package searchclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+    Hot paths of State, measured on states sampled breadth-first from real levels.
+    Every benchmark operation handles one state; run with -prof gc to see the allocation per operation.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateBenchmark
+{
+    @Param({"SAsoko3_08", "SAsoko3_64", "MAPF03", "MAmultiagentSort"})
+    public String level;
+
+    private searchclient.State[] states;
+    // Each entry equals the state at the same index, but is a distinct object with its own arrays.
+    private searchclient.State[] copies;
+    private final ArrayList<searchclient.State> expandedStates = new ArrayList<>(1024);
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    throws IOException
+    {
+        searchclient.State initialState = BenchmarkLevels.load(this.level);
+        this.states = BenchmarkLevels.sample(initialState, 2048).toArray(new searchclient.State[0]);
+        this.copies = new searchclient.State[this.states.length];
+        for (int i = 0; i < this.states.length; ++i)
+        {
+            searchclient.State state = this.states[i];
+            this.copies[i] = new searchclient.State(state.level, state.agentCells.clone(), state.boxes.clone());
+        }
+    }
+
+    private int nextIndex()
+    {
+        int index = this.next;
+        this.next = index + 1 == this.states.length ? 0 : index + 1;
+        return index;
+    }
+
+    @Benchmark
+    public int expand()
+    {
+        this.states[this.nextIndex()].getExpandedStates(this.expandedStates);
+        return this.expandedStates.size();
+    }
+
+    @Benchmark
+    public int hashCodeUncached()
+    {
+        return this.states[this.nextIndex()].computeHashCode();
+    }
+
+    @Benchmark
+    public long fingerprint()
+    {
+        return this.states[this.nextIndex()].fingerprint();
+    }
+
+    @Benchmark
+    public boolean equalsEqual()
+    {
+        int index = this.nextIndex();
+        return this.states[index].equals(this.copies[index]);
+    }
+
+    @Benchmark
+    public boolean isGoalState()
+    {
+        return this.states[this.nextIndex()].isGoalState();
+    }
+}
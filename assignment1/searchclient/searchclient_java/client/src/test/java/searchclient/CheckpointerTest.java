@@ -0,0 +1,62 @@
+package searchclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CheckpointerTest
+{
+    private static final String LEVEL = "SAsimple2";
+
+    @TempDir
+    Path directory;
+
+    private static Action[][] search(String[] args, SearchContext context)
+    throws IOException
+    {
+        State initialState = TestLevels.load(LEVEL);
+        return SearchOptions.parse(args).search(initialState, context);
+    }
+
+    // A search stopped by the memory limit is checkpointed, and a later run resumes it to a plan of the same length
+    // as a search that was never stopped.
+    @Test
+    void resumesAStoppedSearch()
+    throws IOException
+    {
+        String[] args = {"-bfs"};
+        SearchContext uninterrupted = TestLevels.quietContext();
+        Action[][] expected = search(args, uninterrupted);
+        assertNotNull(expected);
+
+        Path file = this.directory.resolve("search.ckpt");
+        Path log = this.directory.resolve("search.ckpt.log");
+        SearchContext stopped = TestLevels.quietContext();
+        stopped.maxStoredStates = 1_000;
+        stopped.checkpointer = new Checkpointer(file, 3600);
+        assertNull(search(args, stopped));
+        assertEquals(SearchContext.Outcome.MEMORY, stopped.outcome);
+        assertTrue(Files.exists(file));
+        assertTrue(Files.exists(log));
+
+        SearchContext resumed = TestLevels.quietContext();
+        resumed.checkpointer = new Checkpointer(file, 3600);
+        Action[][] plan = search(args, resumed);
+        assertEquals(SearchContext.Outcome.SOLVED, resumed.outcome);
+        assertNotNull(plan);
+        assertEquals(expected.length, plan.length);
+        assertTrue(PlanSimulator.simulate(LevelParser.parse(TestLevels.file(LEVEL)), plan).isSolution());
+        // The resumed run did not start over, and deleted the checkpoint of the finished search.
+        assertTrue(resumed.expanded < uninterrupted.expanded);
+        assertFalse(Files.exists(file));
+        assertFalse(Files.exists(log));
+    }
+}
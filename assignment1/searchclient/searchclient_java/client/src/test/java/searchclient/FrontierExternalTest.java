@@ -0,0 +1,38 @@
+package searchclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+class FrontierExternalTest
+{
+    private static final String[] LEVELS = {"SAsimple0", "SAsimple1", "SAsimple2", "SAsimple3", "SAsimple4"};
+
+    private static Action[][] search(String level, String... args)
+    throws IOException
+    {
+        SearchContext context = TestLevels.quietContext();
+        Action[][] plan = SearchOptions.parse(args).search(TestLevels.load(level), context);
+        assertEquals(SearchContext.Outcome.SOLVED, context.outcome, level);
+        assertNotNull(plan, level);
+        assertTrue(PlanSimulator.simulate(LevelParser.parse(TestLevels.file(level)), plan).isSolution(), level);
+        return plan;
+    }
+
+    // The external-memory search is breadth-first by layers, so its plans are as short as those of -bfs, also when
+    // its sort buffer of 1 MB spills to several runs.
+    @Test
+    void findsPlansAsShortAsBreadthFirstSearch()
+    throws IOException
+    {
+        for (String level : LEVELS)
+        {
+            Action[][] expected = search(level, "-bfs");
+            Action[][] external = search(level, "-external", "1");
+            assertEquals(expected.length, external.length, level);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package searchclient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class LevelParserTest
+{
+    // The fast parser must read every level exactly as the line-based parser of the original client.
+    @Test
+    void parsesEveryLevelLikeParseLevel()
+    throws IOException
+    {
+        List<Path> files = TestLevels.all();
+        assertFalse(files.isEmpty());
+        for (Path file : files)
+        {
+            String name = file.getFileName().toString();
+            State expected;
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII))
+            {
+                expected = SearchClient.parseLevel(reader);
+            }
+            State actual = LevelParser.parse(file);
+
+            Level expectedLevel = expected.level;
+            Level actualLevel = actual.level;
+            assertEquals(expectedLevel.numRows, actualLevel.numRows, name);
+            assertEquals(expectedLevel.numCols, actualLevel.numCols, name);
+            assertArrayEquals(expectedLevel.walls, actualLevel.walls, name);
+            assertArrayEquals(expectedLevel.goals, actualLevel.goals, name);
+            assertArrayEquals(expectedLevel.agentColors, actualLevel.agentColors, name);
+            assertArrayEquals(expectedLevel.boxColors, actualLevel.boxColors, name);
+            assertArrayEquals(expected.agentCells, actual.agentCells, name);
+            assertArrayEquals(expected.boxes, actual.boxes, name);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package searchclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class PlanSimulatorTest
+{
+    // Two agents facing each other across one free cell, which must swap ends of the corridor.
+    private static final String CORRIDOR = "#domain\nhospital\n#levelname\ncorridor\n#colors\nblue: 0, 1\n" +
+                                           "#initial\n+++++\n+0 1+\n+++++\n" +
+                                           "#goal\n+++++\n+1 0+\n+++++\n#end\n";
+
+    private static State corridor()
+    throws IOException
+    {
+        return LevelParser.parse(new ByteArrayInputStream(CORRIDOR.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void rejectsAgentsMovingIntoTheSameCell()
+    throws IOException
+    {
+        State state = corridor();
+        Action[][] plan = {{Action.MoveE, Action.MoveW}};
+
+        assertNotNull(PlanSimulator.check(state, plan[0]));
+        PlanSimulator.Result result = PlanSimulator.simulate(state, plan);
+        assertFalse(result.isValid());
+        assertEquals(0, result.failedStep);
+        assertEquals("actions conflict", result.failure);
+        assertFalse(result.isSolution());
+    }
+
+    @Test
+    void rejectsJointActionsOfTheWrongSize()
+    throws IOException
+    {
+        State state = corridor();
+
+        assertNotNull(PlanSimulator.check(state, new Action[]{Action.NoOp}));
+        assertNotNull(PlanSimulator.check(state, new Action[]{Action.NoOp, null}));
+    }
+
+    @Test
+    void acceptsOneAgentMovingAtATime()
+    throws IOException
+    {
+        State state = corridor();
+        Action[][] plan = {{Action.MoveE, Action.NoOp}};
+
+        assertNull(PlanSimulator.check(state, plan[0]));
+        PlanSimulator.Result result = PlanSimulator.simulate(state, plan);
+        assertTrue(result.isValid());
+        assertFalse(result.isSolution());
+    }
+
+    @Test
+    void parsesJointActionsAsSentToTheServer()
+    {
+        Action[] jointAction = PlanSimulator.parseJointAction("Move(E)|NoOp");
+
+        assertEquals(Action.MoveE, jointAction[0]);
+        assertEquals(Action.NoOp, jointAction[1]);
+        assertNull(PlanSimulator.parseJointAction("Jump(E)")[0]);
+    }
+}
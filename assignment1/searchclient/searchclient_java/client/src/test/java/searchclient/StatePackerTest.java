@@ -0,0 +1,98 @@
+package searchclient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class StatePackerTest
+{
+    private static final int STATES_PER_LEVEL = 200;
+
+    // The states of a random walk from the initial state in which one agent acts at a time, so that levels with
+    // many agents are sampled without expanding their joint actions.
+    private static List<State> sample(State initialState)
+    {
+        Random random = new Random(1);
+        Action[] actions = Action.values();
+        int numAgents = initialState.agentCells.length;
+        List<State> states = new ArrayList<>();
+        State state = initialState;
+        states.add(state);
+        for (int step = 0; step < 20 * STATES_PER_LEVEL && states.size() < STATES_PER_LEVEL; ++step)
+        {
+            int agent = random.nextInt(numAgents);
+            Action action = actions[random.nextInt(actions.length)];
+            if (action == Action.NoOp || !state.isApplicable(agent, action))
+            {
+                continue;
+            }
+            Action[] jointAction = new Action[numAgents];
+            Arrays.fill(jointAction, Action.NoOp);
+            jointAction[agent] = action;
+            state = new State(state.level, state.agentCells.clone(), state.boxes.clone());
+            state.applyInPlace(jointAction);
+            states.add(state);
+        }
+        return states;
+    }
+
+    // Every state unpacks to itself, also when packed behind other states, and only equal states pack the same.
+    @Test
+    void roundTripsTheStatesOfEveryLevel()
+    throws IOException
+    {
+        for (Path file : TestLevels.all())
+        {
+            String name = file.getFileName().toString();
+            State initialState = LevelParser.parse(file);
+            StatePacker packer = new StatePacker(initialState);
+            List<State> states = sample(initialState);
+            long[] words = new long[states.size() * packer.words];
+            for (int i = 0; i < states.size(); ++i)
+            {
+                packer.pack(states.get(i), words, i * packer.words);
+            }
+
+            HashSet<State> distinct = new HashSet<>(states);
+            HashSet<List<Long>> packings = new HashSet<>();
+            for (int i = 0; i < states.size(); ++i)
+            {
+                State state = states.get(i);
+                State unpacked = packer.unpack(words, i * packer.words);
+                assertArrayEquals(state.agentCells, unpacked.agentCells, name);
+                assertArrayEquals(state.boxes, unpacked.boxes, name);
+                assertEquals(state, unpacked, name);
+                Long[] packing = new Long[packer.words];
+                for (int word = 0; word < packer.words; ++word)
+                {
+                    packing[word] = words[i * packer.words + word];
+                }
+                packings.add(Arrays.asList(packing));
+            }
+            assertEquals(distinct.size(), packings.size(), name);
+        }
+    }
+
+    @Test
+    void packsOverWhatWasThereBefore()
+    throws IOException
+    {
+        State initialState = TestLevels.load("MAExample");
+        StatePacker packer = new StatePacker(initialState);
+        long[] words = new long[packer.words];
+        Arrays.fill(words, -1);
+        packer.pack(initialState, words, 0);
+
+        assertEquals(initialState, packer.unpack(words, 0));
+        assertNotEquals(-1, words[0]);
+    }
+}
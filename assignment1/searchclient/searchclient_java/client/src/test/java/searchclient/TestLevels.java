@@ -0,0 +1,68 @@
+package searchclient;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+    Finds the levels for the tests, like BenchmarkLevels does for the benchmarks: from the searchclient.levels system
+    property, and otherwise relative to the working directory, which is the client module under Maven.
+*/
+final class TestLevels
+{
+    private TestLevels()
+    {
+    }
+
+    static Path directory()
+    {
+        String property = System.getProperty("searchclient.levels");
+        if (property != null)
+        {
+            return Paths.get(property);
+        }
+        for (String candidate : new String[]{"../../levels", "../levels", "levels"})
+        {
+            Path path = Paths.get(candidate);
+            if (Files.isDirectory(path))
+            {
+                return path;
+            }
+        }
+        throw new IllegalStateException("Levels directory not found, set -Dsearchclient.levels=<dir>.");
+    }
+
+    static Path file(String name)
+    {
+        return directory().resolve(name + ".lvl");
+    }
+
+    static List<Path> all()
+    throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory()))
+        {
+            return files.filter(file -> file.getFileName().toString().endsWith(".lvl")).sorted()
+                        .collect(Collectors.toList());
+        }
+    }
+
+    static State load(String name)
+    throws IOException
+    {
+        return LevelPreprocessor.preprocess(LevelParser.parse(file(name)));
+    }
+
+    // A context that searches without printing status lines, with a time limit so a broken search fails the test.
+    static SearchContext quietContext()
+    {
+        SearchContext context = new SearchContext();
+        context.verbose = false;
+        context.timeLimit = 60_000_000_000L;
+        return context;
+    }
+}
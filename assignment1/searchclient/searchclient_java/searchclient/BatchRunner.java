@@ -0,0 +1,508 @@
+package searchclient;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Solves a set of levels in-process and in parallel, without the server, and reports how each search went.
+
+        java searchclient.BatchRunner [options] [search options] <levels>
+
+    Levels are .lvl files, directories (every .lvl file in them) or globs on the file name, e.g.
+    "../levels/SAsoko2_*.lvl". The search options are those of SearchClient (-bfs, -greedy, -bitstate, ...).
+        -jobs <n>         Levels solved at the same time. Default: the number of processors.
+        -time <s>         Time budget per level in seconds. Default: 60.
+        -memory <MB>      Memory budget per level. Default: the maximum heap divided by the number of jobs.
+        -report <file>    Write the report there, as JSON if the name ends in .json and as CSV otherwise.
+                          Default: CSV on stdout.
+        -baseline <file>  Compare against an earlier CSV report, and exit with status 1 on regressions.
+
+    Every plan found is checked with PlanSimulator. The memory budget is enforced by estimating the size of the
+    stored states (see SearchContext), not by measuring the heap. The peak heap in the report is sampled for the
+    whole JVM, so with several jobs it includes the levels solved alongside. With a single job the heap is collected
+    before each level.
+*/
+public class BatchRunner
+{
+    private static final String CSV_HEADER = "level,status,plan_length,expanded,generated,time_s,peak_heap_mb," +
+                                             "expanded_per_s";
+
+    // Regression thresholds relative to the baseline.
+    private static final double EXPANDED_TOLERANCE = 0.10;
+    private static final double TIME_TOLERANCE = 0.25;
+    private static final double TIME_NOISE_SECONDS = 0.1;
+
+    static class Result
+    {
+        final String level;
+        // solved, invalid (the plan failed PlanSimulator), unsolved, timeout, memory or error.
+        String status = "error";
+        int planLength = -1;
+        long expanded = 0;
+        long generated = 0;
+        double seconds = 0;
+        double peakHeap = 0;
+
+        Result(String level)
+        {
+            this.level = level;
+        }
+
+        synchronized void sampleHeap(double used)
+        {
+            this.peakHeap = Math.max(this.peakHeap, used);
+        }
+
+        double expandedPerSecond()
+        {
+            return this.seconds > 0 ? this.expanded / this.seconds : 0;
+        }
+
+        String toCsv()
+        {
+            return String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%.3f,%.1f,%.0f", this.level, this.status,
+                                 this.planLength, this.expanded, this.generated, this.seconds, this.peakHeap,
+                                 this.expandedPerSecond());
+        }
+
+        String toJson()
+        {
+            return String.format(Locale.ROOT, "{\"level\": \"%s\", \"status\": \"%s\", \"plan_length\": %d, " +
+                                              "\"expanded\": %d, \"generated\": %d, \"time_s\": %.3f, " +
+                                              "\"peak_heap_mb\": %.1f, \"expanded_per_s\": %.0f}",
+                                 this.level, this.status, this.planLength, this.expanded, this.generated,
+                                 this.seconds, this.peakHeap, this.expandedPerSecond());
+        }
+
+        static Result fromCsv(String line)
+        {
+            String[] fields = line.split(",");
+            Result result = new Result(fields[0]);
+            result.status = fields[1];
+            result.planLength = Integer.parseInt(fields[2]);
+            result.expanded = Long.parseLong(fields[3]);
+            result.generated = Long.parseLong(fields[4]);
+            result.seconds = Double.parseDouble(fields[5]);
+            result.peakHeap = Double.parseDouble(fields[6]);
+            return result;
+        }
+    }
+
+    private final SearchOptions options;
+    private final double timeLimit;
+    private final long memoryBytes;
+    private final Set<Result> running = ConcurrentHashMap.newKeySet();
+    private boolean collectBetweenLevels = false;
+    // Shared by all levels, each line labelled with its level. Null if metrics are not exported.
+    private PrintStream metrics = null;
+
+    BatchRunner(SearchOptions options, double timeLimit, long memoryBytes)
+    {
+        this.options = options;
+        this.timeLimit = timeLimit;
+        this.memoryBytes = memoryBytes;
+    }
+
+    public static void main(String[] args)
+    throws IOException, InterruptedException
+    {
+        int jobs = Runtime.getRuntime().availableProcessors();
+        double timeLimit = 60;
+        long memoryMB = -1;
+        String reportFile = null;
+        String baselineFile = null;
+        List<String> levelArgs = new ArrayList<>();
+        List<String> searchArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i)
+        {
+            switch (args[i].toLowerCase(Locale.ROOT))
+            {
+                case "-jobs":
+                    jobs = Math.max(1, Integer.parseInt(args[++i]));
+                    break;
+                case "-time":
+                    timeLimit = Double.parseDouble(args[++i]);
+                    break;
+                case "-memory":
+                    memoryMB = Long.parseLong(args[++i]);
+                    break;
+                case "-report":
+                    reportFile = args[++i];
+                    break;
+                case "-baseline":
+                    baselineFile = args[++i];
+                    break;
+                default:
+                    if (args[i].startsWith("-"))
+                    {
+                        searchArgs.add(args[i]);
+                        if (SearchOptions.hasValue(args, i))
+                        {
+                            searchArgs.add(args[++i]);
+                        }
+                    }
+                    else
+                    {
+                        levelArgs.add(args[i]);
+                    }
+            }
+        }
+
+        List<Path> levels = findLevels(levelArgs);
+        if (levels.isEmpty())
+        {
+            System.err.println("No levels given. Usage: java searchclient.BatchRunner [options] [search options] " +
+                               "<level files, directories or globs>");
+            System.exit(2);
+        }
+        if (memoryMB < 0)
+        {
+            memoryMB = (long) (Memory.max() / jobs);
+        }
+        SearchOptions options = SearchOptions.parse(searchArgs.toArray(new String[0]));
+        if (options.bitStateBytes == 0)
+        {
+            // A quarter of the heap per level would not fit several jobs, so use a quarter of the budget instead.
+            options.bitStateBytes = memoryMB * 1024 * 1024 / 4;
+        }
+        if (options.isIterativeDeepening() && options.tableBytes == 0)
+        {
+            options.tableBytes = memoryMB * 1024 * 1024 / 4;
+        }
+        if (options.checkpointFile != null)
+        {
+            System.err.println("The BatchRunner does not checkpoint its levels, ignoring -checkpoint.");
+        }
+        if (options.cacheDirectory != null)
+        {
+            // Replayed plans would say nothing about the search.
+            System.err.println("The BatchRunner always searches, ignoring -cache.");
+        }
+
+        System.err.format("Solving %d levels with %d jobs, %.0f s and %,d MB per level.\n", levels.size(), jobs,
+                          timeLimit, memoryMB);
+        BatchRunner runner = new BatchRunner(options, timeLimit, memoryMB * 1024 * 1024);
+        if (options.metricsFile != null)
+        {
+            runner.metrics = new PrintStream(Files.newOutputStream(Paths.get(options.metricsFile)), true, "US-ASCII");
+        }
+        long start = System.nanoTime();
+        List<Result> results = runner.solveAll(levels, jobs);
+        double seconds = (System.nanoTime() - start) / 1_000_000_000d;
+        if (runner.metrics != null)
+        {
+            runner.metrics.close();
+        }
+
+        int solved = 0;
+        for (Result result : results)
+        {
+            solved += result.status.equals("solved") ? 1 : 0;
+        }
+        System.err.format("Solved %d of %d levels in %.3f s.\n", solved, results.size(), seconds);
+
+        writeReport(results, reportFile);
+
+        if (baselineFile != null)
+        {
+            List<String> regressions = compare(results, readBaseline(Paths.get(baselineFile)));
+            for (String regression : regressions)
+            {
+                System.err.println("Regression: " + regression);
+            }
+            System.err.format("%d regressions against %s.\n", regressions.size(), baselineFile);
+            if (!regressions.isEmpty())
+            {
+                System.exit(1);
+            }
+        }
+    }
+
+    // Expands the level arguments into .lvl files, sorted by name with numbers in numeric order.
+    static List<Path> findLevels(List<String> levelArgs)
+    throws IOException
+    {
+        List<Path> levels = new ArrayList<>();
+        for (String arg : levelArgs)
+        {
+            Path path = Paths.get(arg);
+            String name = path.getFileName().toString();
+            if (name.contains("*") || name.contains("?") || name.contains("["))
+            {
+                Path dir = path.getParent() == null ? Paths.get(".") : path.getParent();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, name))
+                {
+                    stream.forEach(level -> levels.add(level.normalize()));
+                }
+            }
+            else if (Files.isDirectory(path))
+            {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*.lvl"))
+                {
+                    stream.forEach(level -> levels.add(level.normalize()));
+                }
+            }
+            else
+            {
+                levels.add(path.normalize());
+            }
+        }
+        List<Path> distinct = new ArrayList<>(new LinkedHashSet<>(levels));
+        distinct.sort((a, b) -> compareNatural(a.toString(), b.toString()));
+        return distinct;
+    }
+
+    // Compares strings with runs of digits ordered by value, so SAsoko2_16 comes before SAsoko2_128.
+    static int compareNatural(String a, String b)
+    {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length())
+        {
+            char ca = a.charAt(i);
+            char cb = b.charAt(j);
+            if (Character.isDigit(ca) && Character.isDigit(cb))
+            {
+                int endA = i;
+                int endB = j;
+                while (endA < a.length() && Character.isDigit(a.charAt(endA)))
+                {
+                    ++endA;
+                }
+                while (endB < b.length() && Character.isDigit(b.charAt(endB)))
+                {
+                    ++endB;
+                }
+                int c = Long.compare(Long.parseLong(a.substring(i, endA)), Long.parseLong(b.substring(j, endB)));
+                if (c != 0)
+                {
+                    return c;
+                }
+                i = endA;
+                j = endB;
+            }
+            else
+            {
+                if (ca != cb)
+                {
+                    return Character.compare(ca, cb);
+                }
+                ++i;
+                ++j;
+            }
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    // Solves the levels on a pool of jobs threads, and returns their results in the order given.
+    List<Result> solveAll(List<Path> levels, int jobs)
+    throws InterruptedException
+    {
+        this.collectBetweenLevels = jobs == 1;
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "heap sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(() -> {
+            double used = Memory.used();
+            for (Result result : this.running)
+            {
+                result.sampleHeap(used);
+            }
+        }, 0, 20, TimeUnit.MILLISECONDS);
+
+        try
+        {
+            List<Future<Result>> futures = new ArrayList<>(levels.size());
+            for (Path level : levels)
+            {
+                futures.add(pool.submit(() -> this.solve(level)));
+            }
+            List<Result> results = new ArrayList<>(levels.size());
+            for (int i = 0; i < levels.size(); ++i)
+            {
+                try
+                {
+                    results.add(futures.get(i).get());
+                }
+                catch (ExecutionException e)
+                {
+                    // solve records its own failures, so this is a failure of the pool itself.
+                    String name = levels.get(i).getFileName().toString();
+                    System.err.format("%s: %s\n", name, e.getCause());
+                    results.add(new Result(name.endsWith(".lvl") ? name.substring(0, name.length() - 4) : name));
+                }
+            }
+            return results;
+        }
+        finally
+        {
+            // Otherwise the pool's threads keep the JVM alive after a failure.
+            pool.shutdownNow();
+            sampler.shutdownNow();
+        }
+    }
+
+    Result solve(Path file)
+    {
+        String name = file.getFileName().toString();
+        Result result = new Result(name.endsWith(".lvl") ? name.substring(0, name.length() - 4) : name);
+        SearchContext context = new SearchContext();
+        context.verbose = false;
+        context.timeLimit = (long) (this.timeLimit * 1_000_000_000d);
+        if (this.metrics != null)
+        {
+            context.metrics.exportTo(this.metrics, result.level, 1000);
+        }
+        if (this.collectBetweenLevels)
+        {
+            System.gc();
+        }
+        this.running.add(result);
+        result.sampleHeap(Memory.used());
+        long start = System.nanoTime();
+        try
+        {
+            State parsedState = LevelParser.parse(file);
+            State initialState = LevelPreprocessor.preprocess(parsedState);
+            // The external-memory search keeps its states on disk, and its heap use is the sort buffer.
+            if (this.options.externalBytes < 0)
+            {
+                context.maxStoredStates = this.memoryBytes / SearchContext.estimatedStateBytes(initialState);
+            }
+            Action[][] plan = this.options.search(initialState, context);
+            result.status = context.outcome == SearchContext.Outcome.SOLVED ? "solved" :
+                            context.outcome == SearchContext.Outcome.EXHAUSTED ? "unsolved" :
+                            context.outcome.name().toLowerCase(Locale.ROOT);
+            if (plan != null)
+            {
+                result.planLength = plan.length;
+                // Check the plan against the level as the server would see it, before preprocessing.
+                PlanSimulator.Result simulation = PlanSimulator.simulate(parsedState, plan);
+                if (!simulation.isSolution())
+                {
+                    System.err.format("%s: %s\n", result.level, simulation);
+                    result.status = "invalid";
+                }
+            }
+        }
+        catch (OutOfMemoryError e)
+        {
+            result.status = "memory";
+        }
+        catch (Throwable e)
+        {
+            // Any other failure, e.g. a StackOverflowError, only fails this level.
+            System.err.format("%s: %s\n", result.level, e);
+            result.status = "error";
+        }
+        result.seconds = (System.nanoTime() - start) / 1_000_000_000d;
+        result.expanded = context.expanded;
+        result.generated = context.generated;
+        result.sampleHeap(Memory.used());
+        this.running.remove(result);
+
+        System.err.format("%-24s %-8s %,6d actions %,12d expanded %9.3f s\n", result.level, result.status,
+                          Math.max(result.planLength, 0), result.expanded, result.seconds);
+        return result;
+    }
+
+    static void writeReport(List<Result> results, String reportFile)
+    throws IOException
+    {
+        try (PrintStream out = reportFile == null ? new PrintStream(System.out, false, "US-ASCII") :
+                               new PrintStream(Files.newOutputStream(Paths.get(reportFile)), false, "US-ASCII"))
+        {
+            if (reportFile != null && reportFile.endsWith(".json"))
+            {
+                out.println("[");
+                for (int i = 0; i < results.size(); ++i)
+                {
+                    out.println("  " + results.get(i).toJson() + (i + 1 < results.size() ? "," : ""));
+                }
+                out.println("]");
+            }
+            else
+            {
+                out.println(CSV_HEADER);
+                for (Result result : results)
+                {
+                    out.println(result.toCsv());
+                }
+            }
+        }
+    }
+
+    static Map<String, Result> readBaseline(Path file)
+    throws IOException
+    {
+        Map<String, Result> baseline = new HashMap<>();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.US_ASCII);
+        for (String line : lines.subList(1, lines.size()))
+        {
+            if (!line.isBlank())
+            {
+                Result result = Result.fromCsv(line);
+                baseline.put(result.level, result);
+            }
+        }
+        return baseline;
+    }
+
+    // Lists the levels that got worse than in the baseline. Levels missing from the baseline are not compared.
+    static List<String> compare(List<Result> results, Map<String, Result> baseline)
+    {
+        List<String> regressions = new ArrayList<>();
+        for (Result result : results)
+        {
+            Result old = baseline.get(result.level);
+            if (old == null || !old.status.equals("solved"))
+            {
+                continue;
+            }
+            if (!result.status.equals("solved"))
+            {
+                regressions.add(String.format("%s is no longer solved (%s)", result.level, result.status));
+                continue;
+            }
+            if (result.planLength > old.planLength)
+            {
+                regressions.add(String.format("%s plan length %d -> %d", result.level, old.planLength,
+                                              result.planLength));
+            }
+            if (result.expanded > old.expanded * (1 + EXPANDED_TOLERANCE))
+            {
+                regressions.add(String.format("%s expanded %,d -> %,d", result.level, old.expanded,
+                                              result.expanded));
+            }
+            if (result.seconds > old.seconds * (1 + TIME_TOLERANCE) &&
+                result.seconds - old.seconds > TIME_NOISE_SECONDS)
+            {
+                regressions.add(String.format(Locale.ROOT, "%s time %.3f s -> %.3f s", result.level, old.seconds,
+                                              result.seconds));
+            }
+        }
+        return regressions;
+    }
+}
@@ -0,0 +1,464 @@
+package searchclient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Saves a running GraphSearch to disk, so that a later run can resume it.
+
+    A checkpoint is two files:
+        <file>.log  The expanded states, in the order they were expanded. It is only ever appended to.
+        <file>      A header, the counters, the number of states in the log that belong to the checkpoint, and the
+                    frontier. It is written to a temporary file which then replaces it, so it always describes a
+                    complete checkpoint, and states logged after it are ignored.
+    A state is saved as its packing (see StatePacker), the index of its parent in the log (-1 for the initial state),
+    the action of each agent, and its g, pushes and pulls, and move penalties, so the heuristics value it as before.
+    The header holds the fingerprint of the level and the packing of the initial state, so a checkpoint is only
+    resumed on its own level. The frontier is refilled in the order it was saved, and ordered by the strategy of the
+    resuming run.
+
+    The search thread only hands over references: the states expanded since the last checkpoint, and a copy of the
+    frontier. States do not change once created, so a background thread writes them while the search goes on.
+    A checkpoint is taken every interval, on SIGUSR1 where there are signals, when the search stops without a plan
+    (time or memory limit), and when the JVM shuts down, e.g. on Ctrl-C or when the server stops the client. The
+    shutdown then waits up to SHUTDOWN_WAIT_MILLIS for the checkpoint to be written. Both files are deleted once the
+    search finds a plan or runs out of states.
+*/
+public class Checkpointer
+{
+    private static final int MAGIC = 0x53434b50;
+    private static final int VERSION = 1;
+    private static final int CHECK_INTERVAL = 256;
+    private static final long SHUTDOWN_WAIT_MILLIS = 10_000;
+    private static final byte NO_ACTION = -1;
+
+    private final Path file;
+    private final Path log;
+    private final long interval;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpoint writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Thread shutdownHook = new Thread(this::checkpointOnShutdown, "checkpoint on shutdown");
+
+    private StatePacker packer;
+    private long[] initialPacking;
+    private int recordBytes;
+    // Counters of earlier runs of the search, added to those of this run.
+    private long expandedBefore = 0;
+    private long generatedBefore = 0;
+    private double secondsBefore = 0;
+
+    // Owned by the search thread.
+    private ArrayList<State> expandedSince = new ArrayList<>();
+    private long lastCheckpoint;
+    private Future<?> pending = null;
+    private volatile boolean searching = false;
+    private volatile boolean requested = false;
+    private volatile CountDownLatch shutdownCheckpoint = null;
+
+    // Owned by the writer thread: the number of states in the log that belong to the last checkpoint.
+    private long logged = 0;
+    private volatile boolean failed = false;
+
+    // Checkpoints to file every intervalSeconds.
+    public Checkpointer(Path file, long intervalSeconds)
+    {
+        this.file = file;
+        this.log = file.resolveSibling(file.getFileName() + ".log");
+        this.interval = intervalSeconds * 1_000_000_000L;
+    }
+
+    // Starts checkpointing a search. Returns true if the search resumes a checkpoint, whose states are then in the
+    // frontier and closed list; otherwise the search starts from the initial state as usual.
+    boolean start(State initialState, Frontier frontier, ClosedList explored)
+    {
+        this.packer = new StatePacker(initialState);
+        this.initialPacking = new long[this.packer.words];
+        this.packer.pack(initialState, this.initialPacking, 0);
+        this.recordBytes = 8 * this.packer.words + 4 + this.packer.numAgents + 12;
+        boolean resumed = Files.exists(this.file) && this.resume(frontier, explored);
+
+        this.lastCheckpoint = System.nanoTime();
+        this.searching = true;
+        Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+        this.handleSignal("USR1");
+        return resumed;
+    }
+
+    // Records that state is being expanded. Called before its children are added to the frontier.
+    void expanded(State state)
+    {
+        this.expandedSince.add(state);
+    }
+
+    // Takes a checkpoint if it is time, or one was asked for, and the previous one has been written.
+    void poll(SearchContext context, Frontier frontier)
+    {
+        if (context.expanded % CHECK_INTERVAL != 0 || this.failed || (this.pending != null && !this.pending.isDone()))
+        {
+            return;
+        }
+        if (this.requested || System.nanoTime() - this.lastCheckpoint >= this.interval)
+        {
+            this.checkpoint(context, frontier);
+        }
+    }
+
+    // Stops checkpointing. A search that stopped without a plan is checkpointed one last time, to be resumed with
+    // a larger limit. The checkpoint of a search that found a plan or exhausted its states is deleted, since
+    // resuming it would only end the same way.
+    void finish(SearchContext context, Frontier frontier)
+    {
+        if (this.pending != null)
+        {
+            this.await(this.pending);
+        }
+        if ((context.outcome == SearchContext.Outcome.TIMEOUT || context.outcome == SearchContext.Outcome.MEMORY) &&
+            !frontier.isEmpty())
+        {
+            if (!this.failed)
+            {
+                this.checkpoint(context, frontier);
+                this.await(this.pending);
+                System.err.format("Checkpointed the search to %s.\n", this.file);
+            }
+        }
+        else if (context.outcome == SearchContext.Outcome.SOLVED ||
+                 context.outcome == SearchContext.Outcome.EXHAUSTED)
+        {
+            this.delete();
+        }
+        this.searching = false;
+        CountDownLatch shutdown = this.shutdownCheckpoint;
+        if (shutdown != null)
+        {
+            shutdown.countDown();
+        }
+        try
+        {
+            Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+        }
+        catch (IllegalStateException e)
+        {
+            // The JVM is already shutting down.
+        }
+        this.writer.shutdown();
+    }
+
+    private void checkpoint(SearchContext context, Frontier frontier)
+    {
+        this.requested = false;
+        this.lastCheckpoint = System.nanoTime();
+        List<State> expanded = this.expandedSince;
+        this.expandedSince = new ArrayList<>();
+        List<State> frontierStates = new ArrayList<>(frontier.size());
+        for (State state : frontier)
+        {
+            frontierStates.add(state);
+        }
+        long totalExpanded = this.expandedBefore + context.expanded;
+        long totalGenerated = this.generatedBefore + context.generated;
+        double totalSeconds = this.secondsBefore + context.elapsedSeconds();
+        CountDownLatch shutdown = this.shutdownCheckpoint;
+        this.pending = this.writer.submit(() -> {
+            try
+            {
+                this.write(expanded, frontierStates, totalExpanded, totalGenerated, totalSeconds);
+            }
+            catch (IOException e)
+            {
+                this.failed = true;
+                System.err.format("Could not write checkpoint %s (%s), not checkpointing any more.\n", this.file, e);
+            }
+            finally
+            {
+                if (shutdown != null)
+                {
+                    shutdown.countDown();
+                }
+            }
+        });
+    }
+
+    // Appends the newly expanded states to the log, then replaces the checkpoint file.
+    private void write(List<State> expanded, List<State> frontier, long totalExpanded, long totalGenerated,
+                       double totalSeconds)
+    throws IOException
+    {
+        // The first checkpoint of a search that was not resumed starts a new log.
+        try (FileOutputStream stream = new FileOutputStream(this.log.toFile(), this.logged > 0);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16)))
+        {
+            for (State state : expanded)
+            {
+                this.writeState(out, state);
+                state.checkpointIndex = (int) this.logged++;
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+
+        Path temporary = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16)))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(this.packer.level.fingerprint());
+            out.writeInt(this.packer.numAgents);
+            out.writeInt(this.packer.words);
+            for (long word : this.initialPacking)
+            {
+                out.writeLong(word);
+            }
+            out.writeLong(this.logged);
+            out.writeLong(totalExpanded);
+            out.writeLong(totalGenerated);
+            out.writeDouble(totalSeconds);
+            out.writeInt(frontier.size());
+            for (State state : frontier)
+            {
+                this.writeState(out, state);
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeState(DataOutputStream out, State state)
+    throws IOException
+    {
+        long[] words = new long[this.packer.words];
+        this.packer.pack(state, words, 0);
+        for (long word : words)
+        {
+            out.writeLong(word);
+        }
+        if (state.parent != null && state.parent.checkpointIndex < 0)
+        {
+            throw new IOException("The parent of a state was not expanded before the checkpoint.");
+        }
+        out.writeInt(state.parent == null ? -1 : state.parent.checkpointIndex);
+        Action[] jointAction = state.jointActionCode == -1 ? null : JointAction.decode(state.jointActionCode);
+        for (int agent = 0; agent < this.packer.numAgents; ++agent)
+        {
+            out.writeByte(jointAction == null ? NO_ACTION : jointAction[agent].ordinal());
+        }
+        out.writeInt(state.g());
+        out.writeInt(state.pp());
+        out.writeInt(state.movePenalties());
+    }
+
+    // Reads the checkpoint into the frontier and closed list, and returns false if it cannot be resumed.
+    private boolean resume(Frontier frontier, ClosedList explored)
+    {
+        State[] expanded;
+        List<State> frontierStates = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.file),
+                                                                              1 << 16)))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                throw new IOException("not a checkpoint");
+            }
+            long[] initialPacking = new long[this.packer.words];
+            boolean sameLevel = in.readLong() == this.packer.level.fingerprint() &&
+                                in.readInt() == this.packer.numAgents && in.readInt() == this.packer.words;
+            for (int i = 0; sameLevel && i < initialPacking.length; ++i)
+            {
+                initialPacking[i] = in.readLong();
+            }
+            if (!sameLevel || !Arrays.equals(initialPacking, this.initialPacking))
+            {
+                System.err.format("Checkpoint %s is of another level, starting from the initial state.\n", this.file);
+                return false;
+            }
+            long logged = in.readLong();
+            long expandedBefore = in.readLong();
+            long generatedBefore = in.readLong();
+            double secondsBefore = in.readDouble();
+
+            expanded = new State[Math.toIntExact(logged)];
+            try (DataInputStream logIn = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.log),
+                                                                                     1 << 16)))
+            {
+                for (int i = 0; i < expanded.length; ++i)
+                {
+                    expanded[i] = this.readState(logIn, expanded, i);
+                    expanded[i].checkpointIndex = i;
+                }
+            }
+            int frontierSize = in.readInt();
+            for (int i = 0; i < frontierSize; ++i)
+            {
+                frontierStates.add(this.readState(in, expanded, expanded.length));
+            }
+            // Drop states logged after the checkpoint, so that the log can be appended to.
+            try (FileChannel channel = FileChannel.open(this.log, StandardOpenOption.WRITE))
+            {
+                channel.truncate(logged * this.recordBytes);
+            }
+            this.logged = logged;
+            this.expandedBefore = expandedBefore;
+            this.generatedBefore = generatedBefore;
+            this.secondsBefore = secondsBefore;
+        }
+        catch (IOException | ArithmeticException e)
+        {
+            System.err.format("Could not resume checkpoint %s (%s), starting from the initial state.\n", this.file, e);
+            return false;
+        }
+
+        boolean exact = explored.isExact();
+        for (State state : expanded)
+        {
+            explored.add(state);
+        }
+        for (State state : frontierStates)
+        {
+            frontier.add(state);
+            if (!exact)
+            {
+                explored.add(state);
+            }
+        }
+        System.err.format("Resumed checkpoint %s: %,d expanded and %,d frontier states, after %,d expansions and " +
+                          "%.1f s in earlier runs.\n", this.file, expanded.length, frontierStates.size(),
+                          this.expandedBefore, this.secondsBefore);
+        return true;
+    }
+
+    // Reads a state whose parent is one of the first count expanded states.
+    private State readState(DataInputStream in, State[] expanded, int count)
+    throws IOException
+    {
+        long[] words = new long[this.packer.words];
+        for (int i = 0; i < words.length; ++i)
+        {
+            words[i] = in.readLong();
+        }
+        int parent = in.readInt();
+        if (parent < -1 || parent >= count)
+        {
+            throw new IOException("corrupt parent index");
+        }
+        Action[] jointAction = new Action[this.packer.numAgents];
+        for (int agent = 0; agent < jointAction.length; ++agent)
+        {
+            byte action = in.readByte();
+            jointAction[agent] = action == NO_ACTION ? null : Action.values()[action];
+        }
+        int g = in.readInt();
+        int pp = in.readInt();
+        int movePenalties = in.readInt();
+        return new State(this.packer.level, this.packer.agentCells(words, 0), this.packer.boxes(words, 0),
+                         parent == -1 ? null : expanded[parent], parent == -1 ? -1 : JointAction.intern(jointAction),
+                         g, pp, movePenalties);
+    }
+
+    private void delete()
+    {
+        try
+        {
+            Files.deleteIfExists(this.file);
+            Files.deleteIfExists(this.log);
+        }
+        catch (IOException e)
+        {
+            System.err.format("Could not delete checkpoint %s (%s).\n", this.file, e);
+        }
+    }
+
+    // Asks the search for a checkpoint, and waits for it to be written while the search keeps going.
+    private void checkpointOnShutdown()
+    {
+        if (!this.searching)
+        {
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        this.shutdownCheckpoint = done;
+        this.requested = true;
+        try
+        {
+            if (done.await(SHUTDOWN_WAIT_MILLIS, TimeUnit.MILLISECONDS) && !this.failed)
+            {
+                System.err.format("Checkpointed the search to %s.\n", this.file);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void await(Future<?> future)
+    {
+        try
+        {
+            future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            this.failed = true;
+        }
+    }
+
+    // Asks for a checkpoint when the process receives the signal. sun.misc.Signal is used through reflection, so
+    // that compiling does not warn about it; where it is missing or the signal does not exist, there is no signal.
+    private void handleSignal(String name)
+    {
+        try
+        {
+            Class<?> signalClass = Class.forName("sun.misc.Signal");
+            Class<?> handlerClass = Class.forName("sun.misc.SignalHandler");
+            Object handler = Proxy.newProxyInstance(handlerClass.getClassLoader(), new Class<?>[]{handlerClass},
+                                                    (proxy, method, args) -> {
+                switch (method.getName())
+                {
+                    case "handle":
+                        this.requested = true;
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return "checkpoint signal handler";
+                }
+            });
+            Object signal = signalClass.getConstructor(String.class).newInstance(name);
+            signalClass.getMethod("handle", signalClass, handlerClass).invoke(null, signal, handler);
+        }
+        catch (ReflectiveOperationException | RuntimeException e)
+        {
+            // No such signal on this platform.
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package searchclient;
+
+import java.util.HashSet;
+
+public interface ClosedList
+{
+    // Adds the state, returning false if it was already in the list (or is believed to be, for approximate lists).
+    boolean add(State state);
+    boolean contains(State state);
+    long size();
+    // Exact lists only hold expanded states. Approximate lists are filled as states are generated, so the
+    // frontier does not need its own duplicate check.
+    boolean isExact();
+    // Estimated probability that contains() wrongly returns true for a new state. 0 for exact lists.
+    double falsePositiveRate();
+    String getName();
+
+    // Returns an approximate closed list of the given size holding the same states, or this list if it is already
+    // approximate.
+    default ClosedList compact(long bytes)
+    {
+        return this;
+    }
+}
+
+class ClosedListHash
+        implements ClosedList
+{
+    private final HashSet<State> set = new HashSet<>(65536);
+
+    @Override
+    public boolean add(State state)
+    {
+        return this.set.add(state);
+    }
+
+    @Override
+    public boolean contains(State state)
+    {
+        return this.set.contains(state);
+    }
+
+    @Override
+    public long size()
+    {
+        return this.set.size();
+    }
+
+    @Override
+    public boolean isExact()
+    {
+        return true;
+    }
+
+    @Override
+    public double falsePositiveRate()
+    {
+        return 0;
+    }
+
+    @Override
+    public ClosedList compact(long bytes)
+    {
+        ClosedList compact = new ClosedListBitState(bytes);
+        for (State state : this.set)
+        {
+            compact.add(state);
+        }
+        return compact;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "hash set";
+    }
+}
+
+/*
+    Bit-state hashing: a fixed-size Bloom filter over 64-bit state fingerprints.
+
+    Memory use is fixed up front, no matter how many states are added. In exchange, a new state may
+    collide with states already seen and be discarded, so the search becomes incomplete. The chance of
+    that is estimated from the fraction of bits set, and reported with the search status.
+*/
+class ClosedListBitState
+        implements ClosedList
+{
+    private static final int NUM_HASHES = 3;
+
+    private final long[] bits;
+    private final long numBits;
+    private long bitsSet = 0;
+    private long size = 0;
+
+    public ClosedListBitState(long bytes)
+    {
+        long words = Math.max(1, Math.min(bytes / 8, Integer.MAX_VALUE - 8));
+        this.bits = new long[(int) words];
+        this.numBits = words * 64;
+    }
+
+    // Sizes the filter to the given fraction of the maximum heap.
+    public static ClosedListBitState ofHeapFraction(double fraction)
+    {
+        return new ClosedListBitState((long) (Memory.max() * fraction * 1024 * 1024));
+    }
+
+    @Override
+    public boolean add(State state)
+    {
+        long fingerprint = state.fingerprint();
+        long h1 = fingerprint;
+        long h2 = Long.rotateLeft(fingerprint, 32) | 1;
+        boolean added = false;
+        for (int i = 0; i < NUM_HASHES; ++i)
+        {
+            long bit = Long.remainderUnsigned(h1 + i * h2, this.numBits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((this.bits[word] & mask) == 0)
+            {
+                this.bits[word] |= mask;
+                ++this.bitsSet;
+                added = true;
+            }
+        }
+        if (added)
+        {
+            ++this.size;
+        }
+        return added;
+    }
+
+    @Override
+    public boolean contains(State state)
+    {
+        long fingerprint = state.fingerprint();
+        long h1 = fingerprint;
+        long h2 = Long.rotateLeft(fingerprint, 32) | 1;
+        for (int i = 0; i < NUM_HASHES; ++i)
+        {
+            long bit = Long.remainderUnsigned(h1 + i * h2, this.numBits);
+            if ((this.bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long size()
+    {
+        return this.size;
+    }
+
+    @Override
+    public boolean isExact()
+    {
+        return false;
+    }
+
+    @Override
+    public double falsePositiveRate()
+    {
+        return Math.pow((double) this.bitsSet / this.numBits, NUM_HASHES);
+    }
+
+    @Override
+    public String getName()
+    {
+        return String.format("bit-state hashing (%,d MB, %d hashes)", this.bits.length * 8L / (1024 * 1024),
+                             NUM_HASHES);
+    }
+}
+
+/*
+    The closed list of FrontierExternal, which detects duplicates itself once a layer of the search is complete.
+    Every state is accepted as new here; the size is the number of states generated.
+*/
+class ClosedListDelayed
+        implements ClosedList
+{
+    private long size = 0;
+
+    @Override
+    public boolean add(State state)
+    {
+        ++this.size;
+        return true;
+    }
+
+    @Override
+    public boolean contains(State state)
+    {
+        return false;
+    }
+
+    @Override
+    public long size()
+    {
+        return this.size;
+    }
+
+    @Override
+    public boolean isExact()
+    {
+        return false;
+    }
+
+    @Override
+    public double falsePositiveRate()
+    {
+        return 0;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "delayed duplicate detection in the frontier";
+    }
+}
@@ -0,0 +1,122 @@
+package searchclient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Plays a level through a SearchDaemon, for the server to start in place of SearchClient:
+
+        java -jar ../server.jar -l ../levels/SAD1.lvl -c "java searchclient.DaemonClient -greedy" -g -s 150 -t 180
+
+    It takes the arguments of SearchClient, and -port <n> if the daemon does not listen on the default port. The
+    standard input is forwarded to the daemon, and its frames are written back to the standard output and error.
+    This JVM only loads the few classes needed for that. If no daemon is listening, the level is solved here.
+*/
+public class DaemonClient
+{
+    public static void main(String[] args)
+    throws IOException
+    {
+        int port = SearchDaemon.DEFAULT_PORT;
+        List<String> searchArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i)
+        {
+            if (args[i].equals("-port"))
+            {
+                port = Integer.parseInt(args[++i]);
+            }
+            else
+            {
+                searchArgs.add(args[i]);
+            }
+        }
+
+        Socket socket = new Socket();
+        try
+        {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1000);
+        }
+        catch (IOException e)
+        {
+            System.err.format("No search daemon on port %d, searching in this JVM.\n", port);
+            SearchClient.main(searchArgs.toArray(new String[0]));
+            return;
+        }
+        socket.setTcpNoDelay(true);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        out.writeInt(searchArgs.size());
+        for (String arg : searchArgs)
+        {
+            out.writeUTF(arg);
+        }
+        out.flush();
+        forward(System.in, out, socket);
+
+        DataInputStream frames = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        byte[] buffer = new byte[1 << 16];
+        int status = 1;
+        try
+        {
+            while (true)
+            {
+                int channel = frames.readByte();
+                int length = frames.readInt();
+                if (channel == SearchDaemon.EXIT)
+                {
+                    status = length;
+                    break;
+                }
+                if (length > buffer.length)
+                {
+                    buffer = new byte[length];
+                }
+                frames.readFully(buffer, 0, length);
+                OutputStream target = channel == SearchDaemon.STDOUT ? System.out : System.err;
+                target.write(buffer, 0, length);
+                target.flush();
+            }
+        }
+        catch (EOFException e)
+        {
+            System.err.println("The search daemon closed the connection.");
+        }
+        socket.close();
+        System.exit(status);
+    }
+
+    // Copies the standard input to the daemon until it ends.
+    private static void forward(InputStream in, DataOutputStream out, Socket socket)
+    {
+        Thread writer = new Thread(() -> {
+            byte[] buffer = new byte[1 << 16];
+            try
+            {
+                int read;
+                while ((read = in.read(buffer)) != -1)
+                {
+                    out.write(buffer, 0, read);
+                    out.flush();
+                }
+                socket.shutdownOutput();
+            }
+            catch (IOException e)
+            {
+                // The daemon has closed the connection.
+            }
+        }, "client-stdin");
+        writer.setDaemon(true);
+        writer.start();
+    }
+}
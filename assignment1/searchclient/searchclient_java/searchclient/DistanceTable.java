@@ -0,0 +1,86 @@
+package searchclient;
+
+import java.util.Arrays;
+
+/*
+    Shortest distances between the cells of a level through its walls, ignoring agents and boxes.
+
+    A row holds the distances from one cell to every cell of the flattened grid, as shorts, and is computed by a
+    breadth-first search the first time it is asked for. Rows are kept up to a budget in bytes; past it, the row
+    computed longest ago is dropped and computed again if needed. Rows must not be modified.
+*/
+public final class DistanceTable
+{
+    public static final short UNREACHABLE = Short.MAX_VALUE;
+
+    private final Level level;
+    private final short[][] rows;
+    // The cells whose rows are kept, in the order they were computed, as a ring of capacity entries.
+    private final int[] kept;
+    private int oldest = 0;
+    private int numKept = 0;
+    private final int[] queue;
+
+    public DistanceTable(Level level, long budgetBytes)
+    {
+        this.level = level;
+        this.rows = new short[level.numCells][];
+        int capacity = (int) Math.max(1, Math.min(level.numCells, budgetBytes / (2L * level.numCells + 16)));
+        this.kept = new int[capacity];
+        this.queue = new int[level.numCells];
+    }
+
+    // The distances from cell to every cell, or UNREACHABLE.
+    public short[] from(int cell)
+    {
+        short[] row = this.rows[cell];
+        if (row == null)
+        {
+            row = this.compute(cell);
+        }
+        return row;
+    }
+
+    public int distance(int from, int to)
+    {
+        return this.from(from)[to];
+    }
+
+    private short[] compute(int source)
+    {
+        // A dropped row is not reused, as a caller may still hold it.
+        if (this.numKept == this.kept.length)
+        {
+            this.rows[this.kept[this.oldest]] = null;
+            this.kept[this.oldest] = source;
+            this.oldest = (this.oldest + 1) % this.kept.length;
+        }
+        else
+        {
+            this.kept[this.numKept++] = source;
+        }
+        short[] row = new short[this.level.numCells];
+        Arrays.fill(row, UNREACHABLE);
+        int[][] neighbours = this.level.neighbours;
+        int[] queue = this.queue;
+        queue[0] = source;
+        row[source] = 0;
+        int tail = 1;
+        for (int head = 0; head < tail; ++head)
+        {
+            int cell = queue[head];
+            short next = (short) (row[cell] + 1);
+            for (int direction = 0; direction < Level.NUM_DIRECTIONS; ++direction)
+            {
+                int neighbour = neighbours[direction][cell];
+                if (neighbour != -1 && row[neighbour] == UNREACHABLE)
+                {
+                    row[neighbour] = next;
+                    queue[tail++] = neighbour;
+                }
+            }
+        }
+        this.rows[source] = row;
+        return row;
+    }
+}
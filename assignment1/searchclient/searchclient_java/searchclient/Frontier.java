@@ -1,13 +1,17 @@
 package searchclient;
 
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.PriorityQueue;
-import java.util.Stack;
 
+// Iterating over a frontier visits its states in no particular order.
 public interface Frontier
+        extends Iterable<State>
 {
     void add(State state);
     State pop();
@@ -15,6 +19,34 @@ public interface Frontier
     int size();
     boolean contains(State state);
     String getName();
+
+    // Computes what the frontier orders the new children of parent by, before they are added.
+    default void evaluate(State parent, List<State> children)
+    {
+    }
+
+    // The value the frontier orders states by, for the search metrics. The uninformed frontiers report g.
+    default int f(State state)
+    {
+        return state.g();
+    }
+
+    // Drops up to count of the states that would be expanded last, and returns how many were dropped.
+    default int prune(int count)
+    {
+        return 0;
+    }
+
+    // The plan to goal, which was popped last. Frontiers that do not keep the parents of their states rebuild it.
+    default Action[][] extractPlan(State goal)
+    {
+        return goal.extractPlan();
+    }
+
+    // Releases what the frontier holds outside the heap, once the search is over.
+    default void close()
+    {
+    }
 }
 
 class FrontierBFS
@@ -56,6 +88,24 @@ class FrontierBFS
         return this.set.contains(state);
     }
 
+    // The deepest states are the last to be expanded.
+    @Override
+    public int prune(int count)
+    {
+        int dropped = 0;
+        for (; dropped < count && !this.queue.isEmpty(); ++dropped)
+        {
+            this.set.remove(this.queue.pollLast());
+        }
+        return dropped;
+    }
+
+    @Override
+    public Iterator<State> iterator()
+    {
+        return this.queue.iterator();
+    }
+
     @Override
     public String getName()
     {
@@ -66,13 +116,13 @@ class FrontierBFS
 class FrontierDFS
         implements Frontier
 {
-    private final Stack<State> stack = new Stack<>();
+    private final ArrayDeque<State> stack = new ArrayDeque<>(65536);
     private final HashSet<State> set = new HashSet<>(65536);
 
     @Override
     public void add(State state)
     {
-        this.stack.add(state);
+        this.stack.push(state);
         this.set.add(state);
     }
 
@@ -102,6 +152,12 @@ class FrontierDFS
         return this.set.contains(state);
     }
 
+    @Override
+    public Iterator<State> iterator()
+    {
+        return this.stack.iterator();
+    }
+
     @Override
     public String getName()
     {
@@ -113,10 +169,11 @@ class FrontierBestFirst
         implements Frontier
 {
     //Implemented custom comparator for use in the priority queue
+    //States are compared by their keys, so the heuristic is not evaluated again on every comparison
     class CustomComparator implements Comparator<State>{
         @Override
         public int compare (State s1, State s2){
-            return heuristic.compare(s1, s2);
+            return heuristic.compareKeys(s1, s2);
         }
     }
     private Heuristic heuristic;
@@ -135,10 +192,21 @@ class FrontierBestFirst
     //Adds the state to the queue and the set
     public void add(State state)
     {
+        if (state.f_score == State.NO_KEY)
+        {
+            state.f_score = this.heuristic.f(state);
+        }
         this.queue.add(state);
         this.set.add(state);
     }
 
+    @Override
+    //Sets the keys of the children in one pass
+    public void evaluate(State parent, List<State> children)
+    {
+        this.heuristic.evaluate(parent, children);
+    }
+
     @Override
     //Polls the state from the priority queue
     public State pop()
@@ -166,6 +234,47 @@ class FrontierBestFirst
         return this.set.contains(state);
     }
 
+    @Override
+    public int f(State state)
+    {
+        return this.heuristic.f(state);
+    }
+
+    // Sorts the states by f, computed once per state, and keeps the best ones. They are added back in order, which
+    // never has to sift a state up the heap.
+    @Override
+    public int prune(int count)
+    {
+        State[] states = this.queue.toArray(new State[0]);
+        count = Math.min(count, states.length);
+        long[] order = new long[states.length];
+        for (int i = 0; i < states.length; ++i)
+        {
+            order[i] = (long) states[i].f_score << 32 | i;
+        }
+        Arrays.sort(order);
+        this.queue.clear();
+        for (int i = 0; i < states.length; ++i)
+        {
+            State state = states[(int) order[i]];
+            if (i < states.length - count)
+            {
+                this.queue.add(state);
+            }
+            else
+            {
+                this.set.remove(state);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public Iterator<State> iterator()
+    {
+        return this.queue.iterator();
+    }
+
     @Override
     public String getName()
     {
@@ -0,0 +1,657 @@
+package searchclient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/*
+    Breadth-first search in external memory, with sorting-based delayed duplicate detection.
+
+    The frontier is one layer of the search at a time: a file of packed states, sorted by their packing. Children
+    are not checked when they are added, but collected in a sort buffer of fixed size, which is sorted and written
+    out as a run whenever it fills up. Once the layer is expanded, its runs are merged sequentially into the next
+    layer, dropping duplicates between runs and states of the current and previous layers. Every action of this
+    domain can be undone in one step (a pull undoes a push), so a child can only repeat a state of those two layers.
+    That does not hold for tunnel walks, which may end elsewhere than where they started, so the level must not have
+    tunnels. Memory use is the sort buffer; the rest is streamed from disk.
+
+    A record is a state and its parent, packed by StatePacker. The plan is found by looking up the parent of the goal
+    in each layer back to the initial state, and replaying that path. So layers are kept, in a temporary directory,
+    until the frontier is closed. Layers and runs are read through memory mappings.
+
+    The frontier does its own duplicate detection, and is meant to be used with ClosedListDelayed.
+*/
+class FrontierExternal
+        implements Frontier
+{
+    // Files are read through mappings of at most this many bytes, rounded down to whole records. They are written
+    // through a buffer, since a file cannot be cut to size while it is mapped on every platform.
+    private static final long WINDOW_BYTES = 1L << 28;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private final StatePacker packer;
+    // Words per packed state, and per record (a state and its parent).
+    private final int keyWords;
+    private final int recordWords;
+
+    private final Path directory;
+    private final long bufferBytes;
+    private final long[] buffer;
+    private final int[] order;
+    private final int[] sortScratch;
+    private final int capacity;
+    private int buffered = 0;
+    private final List<Path> runs = new ArrayList<>();
+    private long spilled = 0;
+
+    private final List<Path> layers = new ArrayList<>();
+    private int depth = -1;
+    private Records layer = null;
+    private long position = 0;
+
+    private State initialState = null;
+    // The record popped last: the state being expanded and its parent.
+    private final long[] current;
+
+    FrontierExternal(State initialState, long bufferBytes)
+    {
+        if (initialState.level.tunnels != null)
+        {
+            throw new IllegalArgumentException("The external-memory search cannot use tunnel macros.");
+        }
+        this.packer = new StatePacker(initialState);
+        this.keyWords = this.packer.words;
+        this.recordWords = 2 * this.keyWords;
+
+        // Each buffered record takes its words, plus two ints to sort it.
+        this.bufferBytes = bufferBytes;
+        long capacity = bufferBytes / (8L * this.recordWords + 8);
+        this.capacity = (int) Math.max(1, Math.min(capacity, (Integer.MAX_VALUE - 8) / this.recordWords));
+        this.buffer = new long[this.capacity * this.recordWords];
+        this.order = new int[this.capacity];
+        this.sortScratch = new int[this.capacity];
+        this.current = new long[this.recordWords];
+        // The initial state has no parent.
+        Arrays.fill(this.current, -1);
+
+        try
+        {
+            this.directory = Files.createTempDirectory("searchclient-external");
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        this.directory.toFile().deleteOnExit();
+    }
+
+    // Sizes the sort buffer to the given fraction of the maximum heap.
+    static FrontierExternal ofHeapFraction(State initialState, double fraction)
+    {
+        return new FrontierExternal(initialState, (long) (Memory.max() * fraction * 1024 * 1024));
+    }
+
+    @Override
+    public void add(State state)
+    {
+        if (this.initialState == null)
+        {
+            this.initialState = state;
+        }
+        if (this.buffered == this.capacity)
+        {
+            this.writeRun();
+        }
+        int offset = this.buffered * this.recordWords;
+        this.packer.pack(state, this.buffer, offset);
+        // The parent is the state popped last.
+        System.arraycopy(this.current, 0, this.buffer, offset + this.keyWords, this.keyWords);
+        ++this.buffered;
+    }
+
+    @Override
+    public State pop()
+    {
+        if (this.isEmpty())
+        {
+            throw new NoSuchElementException();
+        }
+        this.layer.read(this.position++, this.current, 0);
+        return this.packer.unpack(this.current, 0);
+    }
+
+    // Moves on to the next layer once the current one is expanded.
+    @Override
+    public boolean isEmpty()
+    {
+        while (this.layer == null || this.position == this.layer.size)
+        {
+            if (this.buffered == 0 && this.runs.isEmpty())
+            {
+                return true;
+            }
+            this.nextLayer();
+        }
+        return false;
+    }
+
+    @Override
+    public int size()
+    {
+        long remaining = this.layer == null ? 0 : this.layer.size - this.position;
+        return (int) Math.min(Integer.MAX_VALUE, remaining + this.spilled + this.buffered);
+    }
+
+    // Duplicates are only detected when a layer is complete.
+    @Override
+    public boolean contains(State state)
+    {
+        return false;
+    }
+
+    // States are ordered by the layer they are in.
+    @Override
+    public int f(State state)
+    {
+        return this.depth;
+    }
+
+    // The states of the current layer that are still to be expanded.
+    @Override
+    public Iterator<State> iterator()
+    {
+        Records layer = this.layer;
+        long start = this.layer == null ? 0 : this.position;
+        long[] record = new long[this.recordWords];
+        return new Iterator<State>()
+        {
+            private long next = start;
+
+            @Override
+            public boolean hasNext()
+            {
+                return layer != null && this.next < layer.size;
+            }
+
+            @Override
+            public State next()
+            {
+                if (!this.hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                layer.read(this.next++, record, 0);
+                return FrontierExternal.this.packer.unpack(record, 0);
+            }
+        };
+    }
+
+    // Looks up the parents of the goal layer by layer, and replays the path from the initial state.
+    @Override
+    public Action[][] extractPlan(State goal)
+    {
+        long[][] path = new long[this.depth + 1][];
+        path[this.depth] = Arrays.copyOf(this.current, this.keyWords);
+        long[] parent = Arrays.copyOfRange(this.current, this.keyWords, this.recordWords);
+        long[] record = new long[this.recordWords];
+        for (int layer = this.depth - 1; layer >= 0; --layer)
+        {
+            path[layer] = parent;
+            try (Records records = Records.open(this.layers.get(layer), this.recordWords))
+            {
+                records.read(records.find(parent, this.keyWords), record, 0);
+            }
+            parent = Arrays.copyOfRange(record, this.keyWords, this.recordWords);
+        }
+
+        State state = this.initialState;
+        ArrayList<State> children = new ArrayList<>(16);
+        long[] key = new long[this.keyWords];
+        for (int layer = 1; layer <= this.depth; ++layer)
+        {
+            state.getExpandedStates(children);
+            State next = null;
+            for (State child : children)
+            {
+                this.packer.pack(child, key, 0);
+                if (Arrays.equals(key, path[layer]))
+                {
+                    next = child;
+                    break;
+                }
+            }
+            if (next == null)
+            {
+                throw new IllegalStateException("No child of a state on the path is the next state on the path.");
+            }
+            state = next;
+        }
+        return state.extractPlan();
+    }
+
+    @Override
+    public void close()
+    {
+        if (this.layer != null)
+        {
+            this.layer.close();
+            this.layer = null;
+        }
+        for (Path file : this.runs)
+        {
+            delete(file);
+        }
+        for (Path file : this.layers)
+        {
+            delete(file);
+        }
+        delete(this.directory);
+    }
+
+    @Override
+    public String getName()
+    {
+        return String.format("breadth-first search in external memory (%,d MB sort buffer, %d bytes per state, " +
+                             "files in %s)", this.bufferBytes / (1024 * 1024), 8 * this.keyWords, this.directory);
+    }
+
+    // Sorts the buffer and writes it out as a run, without the duplicates within it.
+    private void writeRun()
+    {
+        for (int i = 0; i < this.buffered; ++i)
+        {
+            this.order[i] = i;
+        }
+        this.sort(0, this.buffered);
+        Path file = this.newFile("run");
+        try (Writer writer = new Writer(file, this.recordWords))
+        {
+            int previous = -1;
+            for (int i = 0; i < this.buffered; ++i)
+            {
+                int offset = this.order[i] * this.recordWords;
+                if (previous == -1 || compare(this.buffer, offset, this.buffer, previous, this.keyWords) != 0)
+                {
+                    writer.write(this.buffer, offset);
+                    previous = offset;
+                }
+            }
+            this.spilled += writer.count;
+        }
+        this.runs.add(file);
+        this.buffered = 0;
+    }
+
+    // Merges the runs into the next layer, without duplicates and states of the current and previous layers.
+    private void nextLayer()
+    {
+        if (this.buffered > 0)
+        {
+            this.writeRun();
+        }
+        PriorityQueue<Cursor> merge = new PriorityQueue<>((a, b) -> compare(a.record, 0, b.record, 0, this.keyWords));
+        for (Path run : this.runs)
+        {
+            Cursor cursor = new Cursor(Records.open(run, this.recordWords));
+            if (cursor.advance())
+            {
+                merge.add(cursor);
+            }
+            else
+            {
+                cursor.records.close();
+            }
+        }
+        List<Cursor> previousLayers = new ArrayList<>(2);
+        for (int layer = Math.max(0, this.depth - 1); layer <= this.depth; ++layer)
+        {
+            Cursor cursor = new Cursor(Records.open(this.layers.get(layer), this.recordWords));
+            cursor.advance();
+            previousLayers.add(cursor);
+        }
+
+        Path file = this.newFile("layer" + (this.depth + 1));
+        try (Writer writer = new Writer(file, this.recordWords))
+        {
+            long[] last = new long[this.recordWords];
+            boolean first = true;
+            while (!merge.isEmpty())
+            {
+                Cursor cursor = merge.poll();
+                long[] record = cursor.record;
+                if (first || compare(record, 0, last, 0, this.keyWords) != 0)
+                {
+                    if (!this.seen(previousLayers, record))
+                    {
+                        writer.write(record, 0);
+                    }
+                    System.arraycopy(record, 0, last, 0, this.recordWords);
+                    first = false;
+                }
+                if (cursor.advance())
+                {
+                    merge.add(cursor);
+                }
+                else
+                {
+                    cursor.records.close();
+                }
+            }
+        }
+        for (Cursor cursor : previousLayers)
+        {
+            cursor.records.close();
+        }
+        for (Path run : this.runs)
+        {
+            delete(run);
+        }
+        this.runs.clear();
+        this.spilled = 0;
+
+        if (this.layer != null)
+        {
+            this.layer.close();
+        }
+        this.layers.add(file);
+        ++this.depth;
+        this.layer = Records.open(file, this.recordWords);
+        this.position = 0;
+    }
+
+    // True if the key of record is in one of the layers, whose cursors only move forward as the keys increase.
+    private boolean seen(List<Cursor> layers, long[] record)
+    {
+        for (Cursor cursor : layers)
+        {
+            while (cursor.valid && compare(cursor.record, 0, record, 0, this.keyWords) < 0)
+            {
+                cursor.advance();
+            }
+            if (cursor.valid && compare(cursor.record, 0, record, 0, this.keyWords) == 0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Merge sort of order[from, to) by the keys of the buffered records.
+    private void sort(int from, int to)
+    {
+        if (to - from < 2)
+        {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        this.sort(from, middle);
+        this.sort(middle, to);
+        int[] order = this.order;
+        if (compare(this.buffer, order[middle - 1] * this.recordWords, this.buffer, order[middle] * this.recordWords,
+                    this.keyWords) <= 0)
+        {
+            return;
+        }
+        System.arraycopy(order, from, this.sortScratch, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; ++i)
+        {
+            if (right == to || (left < middle && compare(this.buffer, this.sortScratch[left] * this.recordWords,
+                                                         this.buffer, this.sortScratch[right] * this.recordWords,
+                                                         this.keyWords) <= 0))
+            {
+                order[i] = this.sortScratch[left++];
+            }
+            else
+            {
+                order[i] = this.sortScratch[right++];
+            }
+        }
+    }
+
+    private static int compare(long[] a, int aOffset, long[] b, int bOffset, int words)
+    {
+        for (int i = 0; i < words; ++i)
+        {
+            int c = Long.compare(a[aOffset + i], b[bOffset + i]);
+            if (c != 0)
+            {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private Path newFile(String name)
+    {
+        try
+        {
+            Path file = Files.createTempFile(this.directory, name, ".bin");
+            file.toFile().deleteOnExit();
+            return file;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void delete(Path file)
+    {
+        try
+        {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e)
+        {
+            // Left for deleteOnExit.
+        }
+    }
+
+    // Reads a sorted file of records forward, one record at a time.
+    private class Cursor
+    {
+        final Records records;
+        final long[] record = new long[FrontierExternal.this.recordWords];
+        long next = 0;
+        boolean valid = false;
+
+        Cursor(Records records)
+        {
+            this.records = records;
+        }
+
+        boolean advance()
+        {
+            this.valid = this.next < this.records.size;
+            if (this.valid)
+            {
+                this.records.read(this.next++, this.record, 0);
+            }
+            return this.valid;
+        }
+    }
+
+    // A file of records, mapped read-only in windows.
+    private static class Records
+            implements AutoCloseable
+    {
+        final long size;
+        private final FileChannel channel;
+        private final int recordBytes;
+        private final long windowRecords;
+        private final MappedByteBuffer[] windows;
+
+        private Records(FileChannel channel, int recordWords)
+        throws IOException
+        {
+            this.channel = channel;
+            this.recordBytes = 8 * recordWords;
+            this.size = channel.size() / this.recordBytes;
+            this.windowRecords = WINDOW_BYTES / this.recordBytes;
+            this.windows = new MappedByteBuffer[(int) ((this.size + this.windowRecords - 1) / this.windowRecords)];
+        }
+
+        static Records open(Path file, int recordWords)
+        {
+            try
+            {
+                return new Records(FileChannel.open(file, StandardOpenOption.READ), recordWords);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void read(long record, long[] words, int offset)
+        {
+            int window = (int) (record / this.windowRecords);
+            if (this.windows[window] == null)
+            {
+                this.windows[window] = this.map(window);
+            }
+            MappedByteBuffer bytes = this.windows[window];
+            int position = (int) (record % this.windowRecords) * this.recordBytes;
+            for (int i = 0; i < this.recordBytes / 8; ++i)
+            {
+                words[offset + i] = bytes.getLong(position + 8 * i);
+            }
+        }
+
+        // Binary search for the record with the given key, which must be there.
+        long find(long[] key, int keyWords)
+        {
+            long[] record = new long[this.recordBytes / 8];
+            long low = 0;
+            long high = this.size - 1;
+            while (low <= high)
+            {
+                long middle = (low + high) >>> 1;
+                this.read(middle, record, 0);
+                int c = compare(record, 0, key, 0, keyWords);
+                if (c == 0)
+                {
+                    return middle;
+                }
+                if (c < 0)
+                {
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle - 1;
+                }
+            }
+            throw new IllegalStateException("The parent of a state on the path is missing from its layer.");
+        }
+
+        private MappedByteBuffer map(int window)
+        {
+            long start = window * this.windowRecords * this.recordBytes;
+            long length = Math.min(this.windowRecords, this.size - window * this.windowRecords) * this.recordBytes;
+            try
+            {
+                return this.channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            try
+            {
+                this.channel.close();
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Appends records to a new file through a direct buffer.
+    private static class Writer
+            implements AutoCloseable
+    {
+        long count = 0;
+        private final FileChannel channel;
+        private final int recordWords;
+        private final ByteBuffer bytes;
+
+        Writer(Path file, int recordWords)
+        {
+            try
+            {
+                this.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            this.recordWords = recordWords;
+            int recordBytes = 8 * recordWords;
+            this.bytes = ByteBuffer.allocateDirect(Math.max(1, WRITE_BUFFER_BYTES / recordBytes) * recordBytes);
+        }
+
+        void write(long[] words, int offset)
+        {
+            if (!this.bytes.hasRemaining())
+            {
+                this.flush();
+            }
+            for (int i = 0; i < this.recordWords; ++i)
+            {
+                this.bytes.putLong(words[offset + i]);
+            }
+            ++this.count;
+        }
+
+        private void flush()
+        {
+            this.bytes.flip();
+            try
+            {
+                while (this.bytes.hasRemaining())
+                {
+                    this.channel.write(this.bytes);
+                }
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            this.bytes.clear();
+        }
+
+        @Override
+        public void close()
+        {
+            this.flush();
+            try
+            {
+                this.channel.close();
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package searchclient;
+
+import java.util.List;
+
+/*
+    The sum of the distances of the boxes to the nearest goal of their letter and of the agents to their goals,
+    through the walls of the level. Boxes of letters without goals and agents without goals add nothing.
+
+    The distances are looked up in two flattened tables, filled by one breadth-first search per goal when the
+    heuristic is created: boxTable[(letter - 'A') * numCells + cell] and agentTable[agent * numCells + cell]. A state
+    evaluated on its own sums over all its cells. The children of one expansion are evaluated together: each child
+    differs from the parent only in the agents and boxes its joint action moved, so its value is the parent's plus
+    the differences of their table entries, a few lookups per child whatever the size of the level. States of a
+    push level, whose agent stands for its region, are summed in full. Values are cached in the states.
+
+    Several boxes of a letter may count the same goal, so the heuristic is not admissible.
+*/
+final class GoalDistances
+{
+    // The distance of a cell from which no goal of the box's letter or the agent's goal can be reached.
+    static final int UNREACHABLE = 1 << 12;
+
+    private final Level level;
+    private final int numCells;
+    private final short[] boxTable;
+    private final short[] agentTable;
+
+    GoalDistances(State initialState)
+    {
+        this.level = initialState.level;
+        this.numCells = this.level.numCells;
+        int numAgents = initialState.agentCells.length;
+        this.boxTable = new short[26 * this.numCells];
+        this.agentTable = new short[numAgents * this.numCells];
+        DistanceTable distances = new DistanceTable(this.level, 2L * this.numCells + 16);
+        char[] goals = this.level.goals;
+        boolean[] hasGoal = new boolean[26 + numAgents];
+        for (int goal : this.level.goalCells)
+        {
+            char letter = goals[goal];
+            boolean agentGoal = '0' <= letter && letter <= '9';
+            short[] table = agentGoal ? this.agentTable : this.boxTable;
+            int index = agentGoal ? letter - '0' : letter - 'A';
+            if (agentGoal && index >= numAgents)
+            {
+                continue;
+            }
+            short[] row = distances.from(goal);
+            int offset = index * this.numCells;
+            int id = agentGoal ? 26 + index : index;
+            for (int cell = 0; cell < this.numCells; ++cell)
+            {
+                int distance = Math.min(row[cell], UNREACHABLE);
+                if (!hasGoal[id] || distance < table[offset + cell])
+                {
+                    table[offset + cell] = (short) distance;
+                }
+            }
+            hasGoal[id] = true;
+        }
+    }
+
+    // The sum of the goal distances of s, computed once per state.
+    int h(State s)
+    {
+        if (s.h < 0)
+        {
+            s.h = this.sum(s);
+        }
+        return s.h;
+    }
+
+    // Sets the values of the children of parent from the value of the parent.
+    void evaluate(State parent, List<State> children)
+    {
+        if (this.level.pushMacros)
+        {
+            for (State child : children)
+            {
+                this.h(child);
+            }
+            return;
+        }
+        int h = this.h(parent);
+        int[] agentDeltas = this.level.agentDeltas;
+        int[] boxDeltas = this.level.boxDeltas;
+        int[] parentCells = parent.agentCells;
+        int numAgents = parentCells.length;
+        for (State child : children)
+        {
+            if (child.h >= 0)
+            {
+                continue;
+            }
+            int value = h;
+            int[] childCells = child.agentCells;
+            Action[] jointAction = JointAction.decode(child.jointActionCode);
+            for (int agent = 0; agent < numAgents; ++agent)
+            {
+                int offset = agent * this.numCells;
+                value += this.agentTable[offset + childCells[agent]] - this.agentTable[offset + parentCells[agent]];
+                Action action = jointAction[agent];
+                int box;
+                if (action.type == ActionType.Push)
+                {
+                    box = parentCells[agent] + agentDeltas[action.ordinal()];
+                }
+                else if (action.type == ActionType.Pull)
+                {
+                    box = parentCells[agent] - boxDeltas[action.ordinal()];
+                }
+                else
+                {
+                    continue;
+                }
+                int next = box + boxDeltas[action.ordinal()];
+                int letterOffset = (child.boxes[next] - 'A') * this.numCells;
+                value += this.boxTable[letterOffset + next] - this.boxTable[letterOffset + box];
+            }
+            child.h = value;
+        }
+    }
+
+    private int sum(State s)
+    {
+        int sum = 0;
+        char[] boxes = s.boxes;
+        for (int cell = 0; cell < boxes.length; ++cell)
+        {
+            if (boxes[cell] != 0)
+            {
+                sum += this.boxTable[(boxes[cell] - 'A') * this.numCells + cell];
+            }
+        }
+        for (int agent = 0; agent < s.agentCells.length; ++agent)
+        {
+            sum += this.agentTable[agent * this.numCells + s.agentCells[agent]];
+        }
+        return sum;
+    }
+}
@@ -1,12 +1,22 @@
 package searchclient;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 
 public class GraphSearch {
 
     public static Action[][] search(State initialState, Frontier frontier)
+    {
+        return search(initialState, frontier, new ClosedListHash());
+    }
+
+    public static Action[][] search(State initialState, Frontier frontier, ClosedList explored)
+    {
+        return search(initialState, frontier, explored, new SearchContext());
+    }
+
+    // Runs the search within the limits of context, and leaves its outcome and counters there.
+    public static Action[][] search(State initialState, Frontier frontier, ClosedList explored, SearchContext context)
     {
         boolean outputFixedSolution = false;
 
@@ -42,32 +52,94 @@ public class GraphSearch {
             //track of the exact total number of states generated.
 
 
-            int iterations = 0;
+            context.start();
+            SearchMetrics metrics = context.metrics;
+            MemoryGovernor governor = context.memoryGovernor;
+            Checkpointer checkpointer = context.checkpointer;
+            // An approximate closed list is filled at generation time, and replaces the frontier's own check.
+            boolean exact = explored.isExact();
 
-            frontier.add(initialState);
-            HashSet<State> explored = new HashSet<>();
+            if (checkpointer == null || !checkpointer.start(initialState, frontier, explored)) {
+                frontier.add(initialState);
+                if (!exact) {
+                    explored.add(initialState);
+                }
+            }
+            ArrayList<State> expandedStates = new ArrayList<>(16);
+            ArrayList<State> newStates = new ArrayList<>(16);
+            int costBound = context.costBound;
 
             while (true) {
-                if(frontier==null) {
-                    return null;
+                if(frontier.isEmpty()) {
+                    // Pruned states might have led to a goal.
+                    SearchContext.Outcome outcome = metrics.pruned > 0 ? SearchContext.Outcome.MEMORY
+                                                                       : SearchContext.Outcome.EXHAUSTED;
+                    return finish(context, outcome, explored, frontier, null);
                 }
+                metrics.startIteration();
                 State n = frontier.pop();
+                metrics.lap(SearchMetrics.FRONTIER);
                 if(n.isGoalState()) {
-                    printSearchStatus(explored, frontier);
-                    return n.extractPlan();
+                    return finish(context, SearchContext.Outcome.SOLVED, explored, frontier, n);
                 }
 
-                explored.add(n);
+                if (exact) {
+                    explored.add(n);
+                    metrics.lap(SearchMetrics.DUPLICATES);
+                }
 
-                for (State m : n.getExpandedStates()) {
-                    if (!frontier.contains(m) && !explored.contains(m)){
-                        frontier.add(m);
+                if (checkpointer != null) {
+                    checkpointer.expanded(n);
+                }
+                n.getExpandedStates(expandedStates);
+                context.generated += expandedStates.size();
+                metrics.lap(SearchMetrics.SUCCESSORS);
+                metrics.sampleF(frontier, n);
+                newStates.clear();
+                for (State m : expandedStates) {
+                    if (m.g() >= costBound) {
+                        continue;
                     }
+                    boolean isNew = exact ? !frontier.contains(m) && !explored.contains(m) : explored.add(m);
+                    if (isNew){
+                        newStates.add(m);
+                    } else {
+                        ++metrics.duplicates;
+                    }
+                }
+                metrics.lap(SearchMetrics.DUPLICATES);
+                // The new children are evaluated together, so the heuristic can share work between them.
+                frontier.evaluate(n, newStates);
+                metrics.lap(SearchMetrics.HEURISTIC);
+                for (State m : newStates) {
+                    frontier.add(m);
                 }
+                metrics.lap(SearchMetrics.FRONTIER);
+                metrics.endIteration(explored, frontier);
 
                 //Print a status message every 10000 iteration
-                if (++iterations % 10000 == 0) {
-                    printSearchStatus(explored, frontier);
+                if (++context.expanded % 10000 == 0) {
+                    printSearchStatus(context, explored, frontier);
+                }
+
+                SearchContext.Outcome stop = context.checkLimits(exact ? explored.size() + frontier.size()
+                                                                       : frontier.size());
+                if (stop != null) {
+                    return finish(context, stop, explored, frontier, null);
+                }
+
+                // Over the heap budget, give up the exact closed list first, and then the worst frontier states.
+                if (governor != null && governor.isOverBudget(context.expanded)) {
+                    if (exact) {
+                        explored = governor.compact(context, explored, frontier);
+                        exact = false;
+                    } else if (!governor.prune(context, frontier)) {
+                        return finish(context, SearchContext.Outcome.MEMORY, explored, frontier, null);
+                    }
+                }
+
+                if (checkpointer != null) {
+                    checkpointer.poll(context, frontier);
                 }
 
                 //Your code here...
@@ -76,13 +148,48 @@ public class GraphSearch {
         }
     }
 
-    private static long startTime = System.nanoTime();
+    // Ends the search with the given outcome, and returns the plan to goal, or null if there is none.
+    private static Action[][] finish(SearchContext context, SearchContext.Outcome outcome, ClosedList explored,
+                                     Frontier frontier, State goal)
+    {
+        context.finish(outcome);
+        context.metrics.finish(explored, frontier);
+        printSearchStatus(context, explored, frontier);
+        if (context.checkpointer != null)
+        {
+            context.checkpointer.finish(context, frontier);
+        }
+        Action[][] plan = goal == null ? null : frontier.extractPlan(goal);
+        frontier.close();
+        return plan;
+    }
 
-    private static void printSearchStatus(HashSet<State> explored, Frontier frontier)
+    private static void printSearchStatus(SearchContext context, ClosedList explored, Frontier frontier)
     {
+        if (!context.verbose)
+        {
+            return;
+        }
         String statusTemplate = "#Expanded: %,8d, #Frontier: %,8d, #Generated: %,8d, Time: %3.3f s\n%s\n";
-        double elapsedTime = (System.nanoTime() - startTime) / 1_000_000_000d;
-        System.err.format(statusTemplate, explored.size(), frontier.size(), explored.size() + frontier.size(),
+        double elapsedTime = context.elapsedSeconds();
+        long expanded = context.expanded;
+        long generated = explored.isExact() ? explored.size() + frontier.size() : explored.size();
+        System.err.format(statusTemplate, explored.isExact() ? explored.size() : expanded, frontier.size(), generated,
                           elapsedTime, Memory.stringRep());
+        if (!explored.isExact())
+        {
+            System.err.format("[Closed list: %s, estimated false positive rate: %.3g]\n", explored.getName(),
+                              explored.falsePositiveRate());
+        }
+        if (context.outcome != null)
+        {
+            SearchMetrics metrics = context.metrics;
+            System.err.format("[Duplicates: %,d, estimated time in successors: %.3f s, duplicate checks: %.3f s, " +
+                              "frontier: %.3f s, heuristic: %.3f s]\n", metrics.duplicates,
+                              metrics.phaseSeconds(SearchMetrics.SUCCESSORS),
+                              metrics.phaseSeconds(SearchMetrics.DUPLICATES),
+                              metrics.phaseSeconds(SearchMetrics.FRONTIER),
+                              metrics.phaseSeconds(SearchMetrics.HEURISTIC));
+        }
     }
 }
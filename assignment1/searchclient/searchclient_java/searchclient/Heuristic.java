@@ -1,10 +1,18 @@
 package searchclient;
 
 import java.util.Comparator;
+import java.util.List;
 
 public abstract class Heuristic
         implements Comparator<State>
 {
+    // Replaces the goal count with the length of a relaxed plan, or null.
+    RelaxedPlan relaxedPlan = null;
+    // Replaces the goal count with the landmark count, or null.
+    Landmarks landmarks = null;
+    // Replaces the goal count with the sum of the goal distances, or null.
+    GoalDistances goalDistances = null;
+
     public Heuristic(State initialState)
     {
         // Here's a chance to pre-process the static parts of the level.
@@ -12,19 +20,67 @@ public abstract class Heuristic
 
     public int h(State s)
     {
+        if (this.relaxedPlan != null)
+        {
+            return this.relaxedPlan.h(s) + this.subgoal(s);
+        }
+        if (this.landmarks != null)
+        {
+            return this.landmarks.h(s) + this.subgoal(s);
+        }
+        if (this.goalDistances != null)
+        {
+            return this.goalDistances.h(s) + this.subgoal(s);
+        }
         //Retrieve the goals, numbers of push/pulls and movement penalties
         int numGoals = s.getGoals();
         int numPP = s.pp();
         //Settled on using goals + movement penalties
-        return numGoals + s.movePenalties();
+        return numGoals + s.movePenalties() + this.subgoal(s);
     }
 
-    public abstract int f(State s);
+    // Guides the stages of SubgoalSearch to the box they place: its distance to the goal, and the boxes in its way,
+    // which count twice since clearing one takes several actions that do not bring the box closer.
+    private int subgoal(State s)
+    {
+        return 2 * s.blockingBoxes() + s.subgoalDistance();
+    }
+
+    public int f(State s)
+    {
+        return this.f(s.g(), this.h(s));
+    }
+
+    // Combines the cost and the heuristic value of a state.
+    abstract int f(int g, int h);
+
+    // Sets the keys of the new children of parent. The goal distances of all children are computed together from
+    // those of the parent; the other heuristics evaluate each child on its own.
+    void evaluate(State parent, List<State> children)
+    {
+        if (this.goalDistances != null)
+        {
+            this.goalDistances.evaluate(parent, children);
+        }
+        for (State child : children)
+        {
+            child.f_score = this.f(child);
+        }
+    }
 
     @Override
     public int compare(State s1, State s2)
     {
-        return this.f(s1) - this.f(s2);
+        // Among states of equal f, those reached by a helpful action come first.
+        int difference = this.f(s1) - this.f(s2);
+        return difference != 0 ? difference : Boolean.compare(s2.helpful, s1.helpful);
+    }
+
+    // Compares states by the keys set when they were added to a frontier, without evaluating them again.
+    int compareKeys(State s1, State s2)
+    {
+        int difference = Integer.compare(s1.f_score, s2.f_score);
+        return difference != 0 ? difference : Boolean.compare(s2.helpful, s1.helpful);
     }
 }
 
@@ -37,9 +93,9 @@ class HeuristicAStar
     }
 
     @Override
-    public int f(State s)
+    int f(int g, int h)
     {
-        return s.g() + this.h(s);
+        return g + h;
     }
 
     @Override
@@ -61,9 +117,9 @@ class HeuristicWeightedAStar
     }
 
     @Override
-    public int f(State s)
+    int f(int g, int h)
     {
-        return s.g() + this.w * this.h(s);
+        return g + this.w * h;
     }
 
     @Override
@@ -82,9 +138,9 @@ class HeuristicGreedy
     }
 
     @Override
-    public int f(State s)
+    int f(int g, int h)
     {
-        return this.h(s);
+        return h;
     }
 
     @Override
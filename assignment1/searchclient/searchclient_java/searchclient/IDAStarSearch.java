@@ -0,0 +1,522 @@
+package searchclient;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/*
+    Iterative-deepening A*: depth-first searches below increasing bounds on f = g + h. The first plan found is a
+    shortest one, and memory grows with the depth of the search and the fixed size of the transposition table, not
+    with the number of states.
+
+    The search walks a single state through the tree: each joint action is applied to its agents and boxes in place
+    and undone on the way back (State.step), and the joint actions of each depth are enumerated in buffers kept per
+    depth, so nodes allocate nothing. These buffers are also the stack of the depth-first search, which is a loop
+    rather than a recursion, so that plans thousands of joint actions long do not overflow the thread's stack.
+    Tunnel macros are not used, each step is one joint action.
+
+    The heuristic of the other strategies is not admissible, so the search uses its own lower bound, see lowerBound.
+    The transposition table maps state fingerprints to what the search has learnt about them:
+        - A lower bound on the cost to the goal, raised to the smallest f above the bound found below the state
+          minus its g, so that later iterations do not search below it again before their bound reaches it.
+        - The least g at which the state was entered in this iteration. A state entered again at a g no smaller is
+          pruned, as it was (or is being) searched with at least as much of the bound left. This also cuts cycles.
+    Each bucket holds two entries. A new state takes the place of an entry of an earlier iteration, or else of the
+    entry entered deeper, since states near the root stand for larger subtrees. Fingerprints are 64 bits, so a
+    collision, which could prune a state wrongly, is improbable.
+*/
+public class IDAStarSearch
+{
+    // Above any f value, and small enough that adding two of them does not overflow.
+    private static final int INFINITY = 1 << 29;
+    private static final int FOUND = -1;
+    private static final int STOPPED = -2;
+    private static final int EXPANDED = -3;
+    static final int ENTRY_BYTES = 8 + 4 + 4 + 4;
+
+    private final SearchContext context;
+    private final State state;
+    private final Level level;
+    private final int numAgents;
+
+    // Transposition table, in buckets of two entries. An entry of iteration 0 is empty.
+    private final long[] keys;
+    private final int[] bounds;
+    private final int[] depths;
+    private final int[] iterations;
+    private final int bucketMask;
+    private long stored = 0;
+
+    // Distances from each cell to agent goals, and to the nearest goal of each box letter, ignoring boxes and agents.
+    private final int[][] agentGoalDistances;
+    private final int[][] boxGoalDistances;
+    private final int[] goalsPerLetter = new int[26];
+    // Distances of the boxes of each letter to their nearest goal, filled by lowerBound.
+    private final int[][] boxDistances = new int[26][];
+    private final int[] boxCounts = new int[26];
+
+    // Per depth, the stack of the depth-first search: the applicable actions of each agent, the joint action being
+    // tried and its action ordinals, whether it is the first, the fingerprint of the state, and the smallest f above
+    // the threshold found below it so far.
+    private int[][] masks = new int[0][];
+    private Action[][] path = new Action[0][];
+    private int[][] permutations = new int[0][];
+    private boolean[] started = new boolean[0];
+    private long[] pathKeys = new long[0];
+    private int[] minima = new int[0];
+
+    private int threshold;
+    private int goalDepth = 0;
+    private int iteration = 0;
+    private SearchContext.Outcome stop = null;
+
+    private IDAStarSearch(State initialState, SearchContext context, long tableBytes)
+    {
+        this.context = context;
+        this.level = initialState.level;
+        this.state = new State(this.level, initialState.agentCells.clone(), initialState.boxes.clone());
+        this.numAgents = initialState.agentCells.length;
+
+        int buckets = Integer.highestOneBit((int) Math.max(1, Math.min(1 << 29, tableBytes / (2 * ENTRY_BYTES))));
+        this.keys = new long[2 * buckets];
+        this.bounds = new int[2 * buckets];
+        this.depths = new int[2 * buckets];
+        this.iterations = new int[2 * buckets];
+        this.bucketMask = buckets - 1;
+
+        this.agentGoalDistances = new int[this.numAgents][];
+        this.boxGoalDistances = new int[26][];
+        for (int letter = 0; letter < 26; ++letter)
+        {
+            int[] sources = this.goalCellsOf((char) ('A' + letter));
+            this.goalsPerLetter[letter] = sources.length;
+            if (sources.length > 0)
+            {
+                this.boxGoalDistances[letter] = this.distances(sources);
+            }
+        }
+        for (int agent = 0; agent < this.numAgents; ++agent)
+        {
+            int[] sources = this.goalCellsOf((char) ('0' + agent));
+            if (sources.length > 0)
+            {
+                this.agentGoalDistances[agent] = this.distances(sources);
+            }
+        }
+        for (char box : initialState.boxes)
+        {
+            if (box != 0)
+            {
+                ++this.boxCounts[box - 'A'];
+            }
+        }
+        for (int letter = 0; letter < 26; ++letter)
+        {
+            this.boxDistances[letter] = new int[this.boxCounts[letter]];
+        }
+    }
+
+    // Searches for a shortest plan within the limits of context, with a transposition table of about tableBytes.
+    public static Action[][] search(State initialState, SearchContext context, long tableBytes)
+    {
+        IDAStarSearch search = new IDAStarSearch(initialState, context, tableBytes);
+        if (context.verbose)
+        {
+            System.err.format("Starting iterative-deepening A* with a transposition table of %,d entries.\n",
+                              search.keys.length);
+        }
+        return search.run();
+    }
+
+    private Action[][] run()
+    {
+        this.context.start();
+        this.threshold = this.lowerBound();
+        while (true)
+        {
+            ++this.iteration;
+            int result = this.threshold < INFINITY ? this.search() : INFINITY;
+            if (result == FOUND)
+            {
+                return this.finish(SearchContext.Outcome.SOLVED, this.plan());
+            }
+            if (result == STOPPED)
+            {
+                return this.finish(this.stop, null);
+            }
+            if (result >= INFINITY)
+            {
+                return this.finish(SearchContext.Outcome.EXHAUSTED, null);
+            }
+            this.threshold = result;
+            if (this.context.verbose)
+            {
+                System.err.format("[IDA*: bound %,d after %,d expansions, %.3f s]\n", this.threshold,
+                                  this.context.expanded, this.context.elapsedSeconds());
+            }
+        }
+    }
+
+    // Searches below the initial state. Returns FOUND if a goal was reached (the plan is then in path[0, goalDepth)),
+    // STOPPED if a limit was hit, and otherwise the smallest f above the threshold of a node of the tree.
+    private int search()
+    {
+        int result = this.enter(0);
+        if (result != EXPANDED)
+        {
+            return result;
+        }
+        int g = 0;
+        while (true)
+        {
+            Action[] jointAction = this.path[g];
+            if (this.nextJointAction(g))
+            {
+                ++this.context.generated;
+                this.state.step(jointAction, false);
+                result = this.enter(g + 1);
+                if (result == EXPANDED)
+                {
+                    ++g;
+                    continue;
+                }
+                this.state.step(jointAction, true);
+            }
+            else
+            {
+                // Every plan through this state costs at least min - g from here on.
+                result = this.minima[g];
+                int entry = this.find(this.pathKeys[g]);
+                if (entry != -1)
+                {
+                    this.bounds[entry] = Math.max(this.bounds[entry], result - g);
+                }
+                if (g == 0)
+                {
+                    return result;
+                }
+                --g;
+                this.state.step(this.path[g], true);
+            }
+            if (result == FOUND || result == STOPPED)
+            {
+                return result;
+            }
+            this.minima[g] = Math.min(this.minima[g], result);
+        }
+    }
+
+    // Enters the working state, reached in g steps. Returns EXPANDED if it is to be searched below, its joint
+    // actions then being ready at depth g, FOUND if it is a goal, STOPPED if a limit was hit, and otherwise its f,
+    // which is above the threshold.
+    private int enter(int g)
+    {
+        if (g >= this.context.costBound)
+        {
+            return INFINITY;
+        }
+        long key = this.state.fingerprint();
+        int entry = this.find(key);
+        int h = this.lowerBound();
+        if (entry != -1)
+        {
+            h = Math.max(h, this.bounds[entry]);
+            if (this.iterations[entry] == this.iteration && this.depths[entry] <= g)
+            {
+                // Searched from no deeper in this iteration: no goal lies within the threshold below it.
+                return Math.max(Math.min(g + h, INFINITY), this.threshold + 1);
+            }
+        }
+        int f = Math.min(g + h, INFINITY);
+        if (f > this.threshold)
+        {
+            return f;
+        }
+        if (h == 0 && this.state.isGoalState())
+        {
+            this.goalDepth = g;
+            return FOUND;
+        }
+        this.store(key, h, g);
+
+        if (++this.context.expanded % 10000 == 0)
+        {
+            this.printSearchStatus(g);
+        }
+        this.stop = this.context.checkLimits(0);
+        if (this.stop != null)
+        {
+            return STOPPED;
+        }
+
+        this.ensureDepth(g);
+        int[] applicableActions = this.masks[g];
+        int[] actionsPermutation = this.permutations[g];
+        for (int agent = 0; agent < this.numAgents; ++agent)
+        {
+            int mask = 0;
+            for (Action action : Action.values())
+            {
+                if (this.state.isApplicable(agent, action))
+                {
+                    mask |= 1 << action.ordinal();
+                }
+            }
+            applicableActions[agent] = mask;
+            actionsPermutation[agent] = Integer.numberOfTrailingZeros(mask);
+        }
+        this.pathKeys[g] = key;
+        this.minima[g] = INFINITY;
+        this.started[g] = false;
+        return EXPANDED;
+    }
+
+    // Sets path[g] to the next joint action to try in the state at depth g, or returns false if all were tried.
+    private boolean nextJointAction(int g)
+    {
+        int[] applicableActions = this.masks[g];
+        Action[] jointAction = this.path[g];
+        int[] actionsPermutation = this.permutations[g];
+        while (true)
+        {
+            if (this.started[g])
+            {
+                // Advance permutation, as in State.getExpandedStates.
+                boolean done = true;
+                for (int agent = 0; agent < this.numAgents; ++agent)
+                {
+                    int remaining = applicableActions[agent] & (-2 << actionsPermutation[agent]);
+                    if (remaining != 0)
+                    {
+                        actionsPermutation[agent] = Integer.numberOfTrailingZeros(remaining);
+                        done = false;
+                        break;
+                    }
+                    actionsPermutation[agent] = Integer.numberOfTrailingZeros(applicableActions[agent]);
+                }
+                if (done)
+                {
+                    return false;
+                }
+            }
+            this.started[g] = true;
+
+            boolean allNoOp = true;
+            for (int agent = 0; agent < this.numAgents; ++agent)
+            {
+                jointAction[agent] = Action.values()[actionsPermutation[agent]];
+                allNoOp &= jointAction[agent] == Action.NoOp;
+            }
+            // Doing nothing at all never shortens a plan.
+            if (!allNoOp && !this.state.isConflicting(jointAction))
+            {
+                return true;
+            }
+        }
+    }
+
+    /*
+        An admissible estimate of the number of joint actions to the goal, from distances that ignore boxes and
+        agents. Each goal of a letter needs its own box, so the boxes of that letter that are nearest to their
+        nearest goal must move at least the sum of those distances, one cell per action of one agent. An agent
+        must also walk to its goal. The estimate is the largest of:
+            - the distance of any agent to its goal,
+            - the distance of any of those boxes to its nearest goal,
+            - the sum of the box distances, divided among the agents.
+    */
+    private int lowerBound()
+    {
+        int max = 0;
+        for (int agent = 0; agent < this.numAgents; ++agent)
+        {
+            if (this.agentGoalDistances[agent] != null)
+            {
+                max = Math.max(max, this.agentGoalDistances[agent][this.state.agentCells[agent]]);
+            }
+        }
+
+        int[] counts = this.boxCounts;
+        Arrays.fill(counts, 0);
+        char[] boxes = this.state.boxes;
+        for (int cell = 0; cell < boxes.length; ++cell)
+        {
+            if (boxes[cell] != 0)
+            {
+                int letter = boxes[cell] - 'A';
+                if (this.goalsPerLetter[letter] > 0)
+                {
+                    this.boxDistances[letter][counts[letter]++] = this.boxGoalDistances[letter][cell];
+                }
+            }
+        }
+        long sum = 0;
+        for (int letter = 0; letter < 26; ++letter)
+        {
+            int goals = this.goalsPerLetter[letter];
+            if (goals == 0)
+            {
+                continue;
+            }
+            int[] distances = this.boxDistances[letter];
+            if (counts[letter] < goals)
+            {
+                return INFINITY;
+            }
+            if (counts[letter] > goals)
+            {
+                Arrays.sort(distances, 0, counts[letter]);
+            }
+            for (int i = 0; i < goals; ++i)
+            {
+                sum += distances[i];
+                max = Math.max(max, distances[i]);
+            }
+        }
+        return (int) Math.min(INFINITY, Math.max(max, (sum + this.numAgents - 1) / this.numAgents));
+    }
+
+    // The goal cells holding goal.
+    private int[] goalCellsOf(char goal)
+    {
+        return Arrays.stream(this.level.goalCells).filter(cell -> this.level.goals[cell] == goal).toArray();
+    }
+
+    // Breadth-first distances of every cell to the nearest of the sources, INFINITY where they cannot be reached.
+    private int[] distances(int[] sources)
+    {
+        int[] distances = new int[this.level.numCells];
+        Arrays.fill(distances, INFINITY);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int source : sources)
+        {
+            distances[source] = 0;
+            queue.add(source);
+        }
+        while (!queue.isEmpty())
+        {
+            int cell = queue.poll();
+            for (int direction = 0; direction < Level.NUM_DIRECTIONS; ++direction)
+            {
+                int next = this.level.neighbours[direction][cell];
+                if (next != -1 && distances[next] == INFINITY)
+                {
+                    distances[next] = distances[cell] + 1;
+                    queue.add(next);
+                }
+            }
+        }
+        return distances;
+    }
+
+    // The index of the entry of key, or -1.
+    private int find(long key)
+    {
+        int first = 2 * ((int) (key >>> 32) & this.bucketMask);
+        for (int entry = first; entry < first + 2; ++entry)
+        {
+            if (this.iterations[entry] != 0 && this.keys[entry] == key)
+            {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    // Records that the state of key was entered at depth g in this iteration, with lower bound h.
+    private void store(long key, int h, int g)
+    {
+        int entry = this.find(key);
+        if (entry == -1)
+        {
+            int first = 2 * ((int) (key >>> 32) & this.bucketMask);
+            entry = this.replaced(first) ? first : first + 1;
+            if (this.iterations[entry] == this.iteration && this.depths[entry] <= g)
+            {
+                // Both entries stand for larger subtrees of this iteration.
+                return;
+            }
+            if (this.iterations[entry] == 0)
+            {
+                ++this.stored;
+            }
+            this.keys[entry] = key;
+            this.bounds[entry] = h;
+        }
+        else
+        {
+            this.bounds[entry] = Math.max(this.bounds[entry], h);
+        }
+        if (this.iterations[entry] != this.iteration || g < this.depths[entry])
+        {
+            this.depths[entry] = g;
+        }
+        this.iterations[entry] = this.iteration;
+    }
+
+    // True if the first entry of the bucket is the one to replace: empty, of an earlier iteration, or deeper.
+    private boolean replaced(int first)
+    {
+        int second = first + 1;
+        boolean firstOld = this.iterations[first] != this.iteration;
+        boolean secondOld = this.iterations[second] != this.iteration;
+        if (firstOld != secondOld)
+        {
+            return firstOld;
+        }
+        if (firstOld)
+        {
+            return this.iterations[first] <= this.iterations[second];
+        }
+        return this.depths[first] >= this.depths[second];
+    }
+
+    private void ensureDepth(int g)
+    {
+        if (g < this.path.length)
+        {
+            return;
+        }
+        int length = Math.max(64, 2 * this.path.length);
+        int old = this.path.length;
+        this.masks = Arrays.copyOf(this.masks, length);
+        this.path = Arrays.copyOf(this.path, length);
+        this.permutations = Arrays.copyOf(this.permutations, length);
+        this.started = Arrays.copyOf(this.started, length);
+        this.pathKeys = Arrays.copyOf(this.pathKeys, length);
+        this.minima = Arrays.copyOf(this.minima, length);
+        for (int depth = old; depth < length; ++depth)
+        {
+            this.masks[depth] = new int[this.numAgents];
+            this.path[depth] = new Action[this.numAgents];
+            this.permutations[depth] = new int[this.numAgents];
+        }
+    }
+
+    // The joint actions from the initial state to the goal that was found, as interned by JointAction.
+    private Action[][] plan()
+    {
+        Action[][] plan = new Action[this.goalDepth][];
+        for (int step = 0; step < plan.length; ++step)
+        {
+            plan[step] = JointAction.decode(JointAction.intern(this.path[step]));
+        }
+        return plan;
+    }
+
+    private Action[][] finish(SearchContext.Outcome outcome, Action[][] plan)
+    {
+        this.context.finish(outcome);
+        this.printSearchStatus(this.goalDepth);
+        return plan;
+    }
+
+    private void printSearchStatus(int depth)
+    {
+        if (!this.context.verbose)
+        {
+            return;
+        }
+        System.err.format("#Expanded: %,8d, #Generated: %,8d, Bound: %,d, Depth: %,d, Table: %,d of %,d, " +
+                          "Time: %3.3f s\n%s\n", this.context.expanded, this.context.generated, this.threshold,
+                          depth, this.stored, this.keys.length, this.context.elapsedSeconds(), Memory.stringRep());
+    }
+}
@@ -0,0 +1,157 @@
+package searchclient;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/*
+    Interning table for joint actions.
+
+    Every distinct joint action (one Action per agent) is assigned a small int code the first time it is seen,
+    and the table keeps one canonical Action[] for that code. States store only the code, so generating a child
+    no longer copies the joint action array. The canonical arrays are shared and must never be modified.
+
+    Lookups are lock-free; only the first occurrence of a joint action takes the lock to insert it.
+*/
+public final class JointAction
+{
+    // Action ordinals fit in 5 bits, so up to 10 agents fit in the low 50 bits of the key.
+    // The number of agents is stored above them, which also guarantees that no key is 0 (the empty slot marker).
+    private static final int BITS_PER_AGENT = 5;
+    private static final int LENGTH_SHIFT = 50;
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final class Table
+    {
+        final long[] keys;
+        final int[] codes;
+        final int mask;
+
+        Table(int capacity)
+        {
+            this.keys = new long[capacity];
+            this.codes = new int[capacity];
+            this.mask = capacity - 1;
+        }
+    }
+
+    private static volatile Table table = new Table(1024);
+    private static volatile Action[][] actions = new Action[256][];
+    private static int size = 0;
+
+    private JointAction()
+    {
+    }
+
+    // Returns the code of the given joint action, registering it if it has not been seen before.
+    // The argument is copied on first registration, so the caller may reuse it.
+    public static int intern(Action[] jointAction)
+    {
+        long key = key(jointAction);
+        Table t = table;
+        int slot = slot(key, t.mask);
+        while (true)
+        {
+            long k = (long) KEYS.getAcquire(t.keys, slot);
+            if (k == key)
+            {
+                return t.codes[slot];
+            }
+            if (k == 0)
+            {
+                return insert(key, jointAction);
+            }
+            slot = (slot + 1) & t.mask;
+        }
+    }
+
+    // Returns the canonical joint action for a code previously returned by intern.
+    public static Action[] decode(int code)
+    {
+        return actions[code];
+    }
+
+    // Number of distinct joint actions registered so far.
+    public static synchronized int size()
+    {
+        return size;
+    }
+
+    private static synchronized int insert(long key, Action[] jointAction)
+    {
+        Table t = table;
+        int slot = slot(key, t.mask);
+        while (true)
+        {
+            long k = t.keys[slot];
+            if (k == key)
+            {
+                return t.codes[slot];
+            }
+            if (k == 0)
+            {
+                break;
+            }
+            slot = (slot + 1) & t.mask;
+        }
+
+        int code = size;
+        Action[][] a = actions;
+        if (code == a.length)
+        {
+            a = Arrays.copyOf(a, a.length * 2);
+        }
+        a[code] = Arrays.copyOf(jointAction, jointAction.length);
+        actions = a;
+        ++size;
+
+        // Keep the load factor at or below one half.
+        if (size * 2 > t.keys.length)
+        {
+            Table grown = new Table(t.keys.length * 2);
+            for (int i = 0; i < t.keys.length; ++i)
+            {
+                if (t.keys[i] != 0)
+                {
+                    put(grown, t.keys[i], t.codes[i]);
+                }
+            }
+            put(grown, key, code);
+            table = grown;
+        }
+        else
+        {
+            put(t, key, code);
+        }
+        return code;
+    }
+
+    // The code is written before the key is released, so a reader that sees the key also sees the code.
+    private static void put(Table t, long key, int code)
+    {
+        int slot = slot(key, t.mask);
+        while (t.keys[slot] != 0)
+        {
+            slot = (slot + 1) & t.mask;
+        }
+        t.codes[slot] = code;
+        KEYS.setRelease(t.keys, slot, key);
+    }
+
+    private static long key(Action[] jointAction)
+    {
+        long key = (long) jointAction.length << LENGTH_SHIFT;
+        for (int agent = 0; agent < jointAction.length; ++agent)
+        {
+            key |= (long) jointAction[agent].ordinal() << (agent * BITS_PER_AGENT);
+        }
+        return key;
+    }
+
+    private static int slot(long key, int mask)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+}
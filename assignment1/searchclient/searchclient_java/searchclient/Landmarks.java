@@ -0,0 +1,526 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    A landmark-counting heuristic. Landmarks are facts that every plan makes true at some point, found from the
+    initial state when the frontier is created:
+        goal        a goal is satisfied. Every goal is a landmark.
+        clear(c)    no box stands on cell c, for a cell that holds a box initially and that some goal needs free:
+                    a goal cell under a box of another letter, or a cell every way to an unsatisfied goal passes,
+                    for the agent with that goal or for all the boxes of the goal's letter but the one on c.
+    The landmark graph orders them. clear(c) comes before the goal that needs c free (a necessary ordering). Goal g1
+    comes before goal g2 if a box on g2 would wall g1 off from all agents, as in the towers levels (a reasonable
+    ordering: a plan may fill g2 first, but must then empty it again).
+
+    A landmark is accepted once it has been true with all the landmarks before it accepted. An accepted landmark is
+    required again if it is false and is a goal, or comes necessarily before a landmark not accepted yet. The
+    heuristic is the number of landmarks not accepted plus those required again. It is admissible without the
+    reasonable orderings, and divided by the most landmarks one joint action can make true: each agent can satisfy
+    its own goal, clear one cell and put one box on a goal. With -astar that admissible variant is used.
+
+    The accepted and true landmarks of each state are kept as bitsets in the state, with the count at the end. A
+    child's are those of its parent, updated for the landmarks at the cells its joint action touched, so evaluating
+    a child costs time in the number of landmarks that changed. Children that change none share their parent's.
+*/
+final class Landmarks
+{
+    private final Level level;
+    private final boolean admissible;
+    private final int numLandmarks;
+    // The cell of each landmark, and whether it is a goal or a clear(c).
+    private final int[] cells;
+    private final boolean[] isGoal;
+    // The landmarks ordered before and after each landmark, and those ordered after it necessarily.
+    private final int[][] predecessors;
+    private final int[][] successors;
+    private final int[][] necessarySuccessors;
+    // The landmarks at each cell, to find those a joint action may have changed.
+    private final int[][] atCell;
+    // The words of each bitset, and the index of the count in the array of a state.
+    private final int words;
+    private final int countIndex;
+    // The most landmarks one joint action can make true, for the admissible variant.
+    private final int perJointAction;
+
+    // Scratch buffers of an evaluation.
+    private final int[] changed;
+    private final int[] accepted;
+    private final int[] affected;
+    private final int[] seen;
+    private int stamp = 0;
+
+    Landmarks(State initialState, boolean admissible)
+    {
+        this.level = initialState.level;
+        this.admissible = admissible;
+        Level level = this.level;
+        char[] goals = level.goals;
+        char[] boxes = initialState.boxes;
+
+        List<Integer> cells = new ArrayList<>();
+        List<int[]> orderings = new ArrayList<>();
+        List<Boolean> necessary = new ArrayList<>();
+        int[] goalLandmark = new int[level.numCells];
+        int[] clearLandmark = new int[level.numCells];
+        Arrays.fill(clearLandmark, -1);
+        for (int goal : level.goalCells)
+        {
+            goalLandmark[goal] = cells.size();
+            cells.add(goal);
+        }
+        int numGoals = cells.size();
+
+        // clear(c) before the goals that need c free.
+        boolean[] walls = level.walls.clone();
+        int[] distances = new int[level.numCells];
+        for (int cell = 0; cell < level.numCells; ++cell)
+        {
+            if (boxes[cell] == 0)
+            {
+                continue;
+            }
+            walls[cell] = true;
+            for (int goal : level.goalCells)
+            {
+                char letter = goals[goal];
+                boolean needsCell;
+                if (goal == cell)
+                {
+                    needsCell = letter != boxes[cell];
+                }
+                else if ('0' <= letter && letter <= '9')
+                {
+                    int agentCell = initialState.agentCells[letter - '0'];
+                    Arrays.fill(distances, -1);
+                    flood(level, walls, agentCell, distances);
+                    needsCell = agentCell != goal && distances[goal] < 0;
+                }
+                else if (boxes[goal] != letter)
+                {
+                    Arrays.fill(distances, -1);
+                    flood(level, walls, goal, distances);
+                    needsCell = true;
+                    for (int other = 0; other < level.numCells && needsCell; ++other)
+                    {
+                        needsCell = boxes[other] != letter || other == cell || distances[other] < 0;
+                    }
+                }
+                else
+                {
+                    needsCell = false;
+                }
+                if (needsCell)
+                {
+                    if (clearLandmark[cell] == -1)
+                    {
+                        clearLandmark[cell] = cells.size();
+                        cells.add(cell);
+                    }
+                    orderings.add(new int[]{clearLandmark[cell], goalLandmark[goal]});
+                    necessary.add(true);
+                }
+            }
+            walls[cell] = false;
+        }
+
+        // Goals that a box on another goal would wall off come before it.
+        if (!admissible)
+        {
+            for (int goal : level.goalCells)
+            {
+                if (!('A' <= goals[goal] && goals[goal] <= 'Z'))
+                {
+                    continue;
+                }
+                walls[goal] = true;
+                Arrays.fill(distances, -1);
+                for (int agentCell : initialState.agentCells)
+                {
+                    if (agentCell != goal)
+                    {
+                        flood(level, walls, agentCell, distances);
+                    }
+                }
+                for (int other : level.goalCells)
+                {
+                    if (other != goal && distances[other] < 0)
+                    {
+                        orderings.add(new int[]{goalLandmark[other], goalLandmark[goal]});
+                        necessary.add(false);
+                    }
+                }
+                walls[goal] = false;
+            }
+        }
+
+        this.numLandmarks = cells.size();
+        this.cells = cells.stream().mapToInt(Integer::intValue).toArray();
+        this.isGoal = new boolean[this.numLandmarks];
+        Arrays.fill(this.isGoal, 0, numGoals, true);
+        List<List<Integer>> predecessors = lists(this.numLandmarks);
+        List<List<Integer>> successors = lists(this.numLandmarks);
+        List<List<Integer>> necessarySuccessors = lists(this.numLandmarks);
+        for (int i = 0; i < orderings.size(); ++i)
+        {
+            int[] ordering = orderings.get(i);
+            predecessors.get(ordering[1]).add(ordering[0]);
+            successors.get(ordering[0]).add(ordering[1]);
+            if (necessary.get(i))
+            {
+                necessarySuccessors.get(ordering[0]).add(ordering[1]);
+            }
+        }
+        this.predecessors = arrays(predecessors);
+        this.successors = arrays(successors);
+        this.necessarySuccessors = arrays(necessarySuccessors);
+        List<List<Integer>> atCell = lists(level.numCells);
+        for (int landmark = 0; landmark < this.numLandmarks; ++landmark)
+        {
+            atCell.get(this.cells[landmark]).add(landmark);
+        }
+        this.atCell = arrays(atCell);
+
+        this.words = (this.numLandmarks + 63) >>> 6;
+        this.countIndex = 2 * this.words;
+        int perJointAction = 0;
+        for (int agent = 0; agent < initialState.agentCells.length; ++agent)
+        {
+            Color color = level.agentColors[agent];
+            boolean movesBoxes = false;
+            boolean fillsGoals = false;
+            for (int letter = 0; letter < 26; ++letter)
+            {
+                movesBoxes |= level.boxColors[letter] == color;
+            }
+            for (int goal : level.goalCells)
+            {
+                char c = goals[goal];
+                fillsGoals |= 'A' <= c && c <= 'Z' && level.boxColors[c - 'A'] == color;
+                perJointAction += c == '0' + agent ? 1 : 0;
+            }
+            perJointAction += (movesBoxes ? 1 : 0) + (fillsGoals ? 1 : 0);
+        }
+        this.perJointAction = Math.max(1, Math.min(this.numLandmarks, perJointAction));
+
+        this.changed = new int[this.numLandmarks];
+        this.accepted = new int[this.numLandmarks];
+        this.affected = new int[this.numLandmarks];
+        this.seen = new int[this.numLandmarks];
+    }
+
+    int size()
+    {
+        return this.numLandmarks;
+    }
+
+    int h(State s)
+    {
+        this.evaluate(s);
+        int count = (int) s.landmarks[this.countIndex];
+        return this.admissible ? (count + this.perJointAction - 1) / this.perJointAction : count;
+    }
+
+    // Sets the landmarks of s, and of its ancestors first if they have none, e.g. after resuming a checkpoint.
+    private void evaluate(State s)
+    {
+        if (s.landmarks != null)
+        {
+            return;
+        }
+        if (s.parent != null && s.parent.landmarks == null)
+        {
+            List<State> ancestors = new ArrayList<>();
+            for (State ancestor = s.parent; ancestor != null && ancestor.landmarks == null; ancestor = ancestor.parent)
+            {
+                ancestors.add(ancestor);
+            }
+            for (int i = ancestors.size() - 1; i >= 0; --i)
+            {
+                this.evaluate(ancestors.get(i));
+            }
+        }
+        if (s.parent == null)
+        {
+            this.initialize(s);
+        }
+        else
+        {
+            this.update(s);
+        }
+    }
+
+    // The landmarks of a state without a parent: those true and not ordered after a false one are accepted.
+    private void initialize(State s)
+    {
+        long[] bits = new long[this.countIndex + 1];
+        for (int landmark = 0; landmark < this.numLandmarks; ++landmark)
+        {
+            if (this.isTrue(s, landmark))
+            {
+                set(bits, this.words, landmark);
+            }
+        }
+        boolean accepting = true;
+        while (accepting)
+        {
+            accepting = false;
+            for (int landmark = 0; landmark < this.numLandmarks; ++landmark)
+            {
+                if (!get(bits, 0, landmark) && get(bits, this.words, landmark) && this.canAccept(bits, landmark))
+                {
+                    set(bits, 0, landmark);
+                    accepting = true;
+                }
+            }
+        }
+        long count = 0;
+        for (int landmark = 0; landmark < this.numLandmarks; ++landmark)
+        {
+            count += !get(bits, 0, landmark) || this.isRequiredAgain(bits, landmark) ? 1 : 0;
+        }
+        bits[this.countIndex] = count;
+        s.landmarks = bits;
+    }
+
+    // The landmarks of a child, from those of its parent and the landmarks at the cells its joint action touched.
+    private void update(State s)
+    {
+        long[] parentBits = s.parent.landmarks;
+        this.nextStamp();
+        int numChanged = 0;
+        if (this.level.pushMacros)
+        {
+            // The agent of a push-level state stands for its region, so the cells of the push are not at hand.
+            for (int landmark = 0; landmark < this.numLandmarks; ++landmark)
+            {
+                if (this.isTrue(s, landmark) != get(parentBits, this.words, landmark))
+                {
+                    this.changed[numChanged++] = landmark;
+                }
+            }
+        }
+        else
+        {
+            Action[] jointAction = JointAction.decode(s.jointActionCode);
+            int[] parentCells = s.parent.agentCells;
+            for (int agent = 0; agent < parentCells.length; ++agent)
+            {
+                Action action = jointAction[agent];
+                numChanged = this.addChanged(s, parentBits, parentCells[agent], numChanged);
+                numChanged = this.addChanged(s, parentBits, s.agentCells[agent], numChanged);
+                if (action.type == ActionType.Push || action.type == ActionType.Pull)
+                {
+                    int box = action.type == ActionType.Push
+                              ? parentCells[agent] + this.level.agentDeltas[action.ordinal()]
+                              : parentCells[agent] - this.level.boxDeltas[action.ordinal()];
+                    numChanged = this.addChanged(s, parentBits, box, numChanged);
+                    numChanged = this.addChanged(s, parentBits, box + this.level.boxDeltas[action.ordinal()],
+                                                 numChanged);
+                }
+            }
+        }
+        if (numChanged == 0)
+        {
+            s.landmarks = parentBits;
+            return;
+        }
+
+        long[] bits = parentBits.clone();
+        for (int i = 0; i < numChanged; ++i)
+        {
+            flip(bits, this.words, this.changed[i]);
+        }
+        // Accept the landmarks that became true, and those after them that were waiting for them.
+        int numAccepted = 0;
+        for (int i = 0; i < numChanged; ++i)
+        {
+            int landmark = this.changed[i];
+            if (!get(bits, 0, landmark) && get(bits, this.words, landmark) && this.canAccept(bits, landmark))
+            {
+                set(bits, 0, landmark);
+                this.accepted[numAccepted++] = landmark;
+            }
+        }
+        for (int i = 0; i < numAccepted; ++i)
+        {
+            for (int successor : this.successors[this.accepted[i]])
+            {
+                if (!get(bits, 0, successor) && get(bits, this.words, successor) && this.canAccept(bits, successor))
+                {
+                    set(bits, 0, successor);
+                    this.accepted[numAccepted++] = successor;
+                }
+            }
+        }
+
+        // Only the landmarks that changed, and those before the newly accepted ones, may have become required
+        // again or stopped being so.
+        this.nextStamp();
+        int numAffected = 0;
+        for (int i = 0; i < numChanged; ++i)
+        {
+            numAffected = this.addAffected(this.changed[i], numAffected);
+        }
+        for (int i = 0; i < numAccepted; ++i)
+        {
+            int landmark = this.accepted[i];
+            numAffected = this.addAffected(landmark, numAffected);
+            for (int predecessor : this.predecessors[landmark])
+            {
+                numAffected = this.addAffected(predecessor, numAffected);
+            }
+        }
+        long count = parentBits[this.countIndex] - numAccepted;
+        for (int i = 0; i < numAffected; ++i)
+        {
+            int landmark = this.affected[i];
+            count += (this.isRequiredAgain(bits, landmark) ? 1 : 0) -
+                     (this.isRequiredAgain(parentBits, landmark) ? 1 : 0);
+        }
+        bits[this.countIndex] = count;
+        s.landmarks = bits;
+    }
+
+    // Starts a new set of the landmarks marked in seen.
+    private void nextStamp()
+    {
+        if (++this.stamp == Integer.MAX_VALUE)
+        {
+            Arrays.fill(this.seen, 0);
+            this.stamp = 1;
+        }
+    }
+
+    // Adds the landmarks at cell whose truth differs in s from its parent, once each.
+    private int addChanged(State s, long[] parentBits, int cell, int numChanged)
+    {
+        for (int landmark : this.atCell[cell])
+        {
+            if (this.seen[landmark] != this.stamp && this.isTrue(s, landmark) != get(parentBits, this.words, landmark))
+            {
+                this.seen[landmark] = this.stamp;
+                this.changed[numChanged++] = landmark;
+            }
+        }
+        return numChanged;
+    }
+
+    private int addAffected(int landmark, int numAffected)
+    {
+        if (this.seen[landmark] != this.stamp)
+        {
+            this.seen[landmark] = this.stamp;
+            this.affected[numAffected++] = landmark;
+        }
+        return numAffected;
+    }
+
+    private boolean isTrue(State s, int landmark)
+    {
+        int cell = this.cells[landmark];
+        if (!this.isGoal[landmark])
+        {
+            return s.boxes[cell] == 0;
+        }
+        char goal = this.level.goals[cell];
+        return '0' <= goal && goal <= '9' ? s.agentCells[goal - '0'] == cell : s.boxes[cell] == goal;
+    }
+
+    private boolean canAccept(long[] bits, int landmark)
+    {
+        for (int predecessor : this.predecessors[landmark])
+        {
+            if (!get(bits, 0, predecessor))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isRequiredAgain(long[] bits, int landmark)
+    {
+        if (!get(bits, 0, landmark) || get(bits, this.words, landmark))
+        {
+            return false;
+        }
+        if (this.isGoal[landmark])
+        {
+            return true;
+        }
+        for (int successor : this.necessarySuccessors[landmark])
+        {
+            if (!get(bits, 0, successor))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Bit landmark of the bitset starting at word offset.
+    private static boolean get(long[] bits, int offset, int landmark)
+    {
+        return (bits[offset + (landmark >>> 6)] & 1L << landmark) != 0;
+    }
+
+    private static void set(long[] bits, int offset, int landmark)
+    {
+        bits[offset + (landmark >>> 6)] |= 1L << landmark;
+    }
+
+    private static void flip(long[] bits, int offset, int landmark)
+    {
+        bits[offset + (landmark >>> 6)] ^= 1L << landmark;
+    }
+
+    // Adds the breadth-first distances from start through the cells that are not walls to distances, where -1
+    // marks the cells not reached yet.
+    private static void flood(Level level, boolean[] walls, int start, int[] distances)
+    {
+        if (distances[start] >= 0)
+        {
+            return;
+        }
+        int[] queue = new int[level.numCells];
+        int tail = 0;
+        distances[start] = 0;
+        queue[tail++] = start;
+        for (int head = 0; head < tail; ++head)
+        {
+            int cell = queue[head];
+            for (int direction = 0; direction < Level.NUM_DIRECTIONS; ++direction)
+            {
+                int next = level.neighbours[direction][cell];
+                if (next != -1 && !walls[next] && distances[next] == -1)
+                {
+                    distances[next] = distances[cell] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    private static List<List<Integer>> lists(int size)
+    {
+        List<List<Integer>> lists = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i)
+        {
+            lists.add(new ArrayList<>());
+        }
+        return lists;
+    }
+
+    private static int[][] arrays(List<List<Integer>> lists)
+    {
+        int[][] arrays = new int[lists.size()][];
+        for (int i = 0; i < arrays.length; ++i)
+        {
+            arrays[i] = lists.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return arrays;
+    }
+}
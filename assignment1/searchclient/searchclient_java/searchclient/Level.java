@@ -0,0 +1,181 @@
+package searchclient;
+
+import java.util.Random;
+
+/*
+    The static parts of a level: walls, goals and colors, shared by every state of a search.
+
+    Cells are stored in a flattened, padded grid. The level is surrounded by one extra ring of walls,
+    so a cell's index is (row + 1) * width + (col + 1) where width = numCols + 2.
+               Col 0  Col 1  Col 2  ...
+        Row 0: (0,0)  (0,1)  (0,2)  ...
+        Row 1: (1,0)  (1,1)  (1,2)  ...
+        ...
+    Because of the padding, stepping one cell in any direction from a non-wall cell always stays inside
+    the arrays, so no bounds checks are needed when applying action deltas.
+*/
+public class Level
+{
+    public static final int NORTH = 0;
+    public static final int SOUTH = 1;
+    public static final int EAST = 2;
+    public static final int WEST = 3;
+    public static final int NUM_DIRECTIONS = 4;
+
+    public final int numRows;
+    public final int numCols;
+    public final int width;
+    public final int numCells;
+
+    // walls[cell] is true if there's a wall at cell. Padding cells are walls.
+    public final boolean[] walls;
+    // goals[cell] is the goal letter or agent digit at cell, or 0 if there is none.
+    public final char[] goals;
+    // The cells holding a goal, in row-major order.
+    public final int[] goalCells;
+
+    /*
+        The agent colors are indexed by the agent number, the box colors alphabetically.
+        So agentColors[0] is the color of agent '0' and boxColors[0] is the color of A boxes.
+    */
+    public final Color[] agentColors;
+    public final Color[] boxColors;
+
+    // tunnels[cell] is true if the search may move an agent through cell in one macro step.
+    // Set by SearchOptions, see LevelPreprocessor.findTunnels. Null if tunnel macros are not used.
+    public boolean[] tunnels;
+    // True for the push-level search of single-agent levels: children are pushes and pulls after a walk, and the
+    // agent of a state stands on the canonical cell of its region. Set by SearchOptions, see State.getPushStates.
+    public boolean pushMacros = false;
+    // True if agents that waited may not do an action next that they could have done instead of waiting, see
+    // State.removeDelayableActions. Set by SearchOptions.
+    public boolean canonicalOrder = false;
+    // Cells from which the boxes of other letters than clearLetter should be moved away, counted by the heuristic:
+    // the way of a box to its goal and of an agent to that box. Set by SubgoalSearch, null if not used.
+    public int[] clearCells;
+    public char clearLetter;
+    // Distances of the cells to the goal of the stage, ignoring boxes, or -1 where walls keep boxes from it. The
+    // heuristic adds that of the nearest box of clearLetter. Set by SubgoalSearch with clearCells.
+    public int[] clearDistances;
+
+    // Cell offset of each direction, indexed by NORTH, SOUTH, EAST, WEST.
+    public final int[] directionOffsets;
+    // neighbours[direction][cell] is the non-wall cell next to cell in that direction, or -1 if it is a wall.
+    public final int[][] neighbours;
+
+    // Cell offsets of the agent and box displacement of each action, indexed by Action.ordinal().
+    public final int[] agentDeltas;
+    public final int[] boxDeltas;
+
+    // Shuffles the children of every expansion. Each level has its own, so a search is reproducible even
+    // when several run in the same JVM.
+    public final Random random = new Random(1);
+
+    // Constructs a level from padded arrays as described above.
+    // Arguments are not copied, and therefore should not be modified after being passed in.
+    public Level(int numRows, int numCols, boolean[] walls, char[] goals, Color[] agentColors, Color[] boxColors)
+    {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.width = numCols + 2;
+        this.numCells = (numRows + 2) * this.width;
+        this.walls = walls;
+        this.goals = goals;
+        this.agentColors = agentColors;
+        this.boxColors = boxColors;
+
+        int numGoals = 0;
+        for (int cell = 0; cell < this.numCells; ++cell)
+        {
+            if (goals[cell] != 0)
+            {
+                ++numGoals;
+            }
+        }
+        this.goalCells = new int[numGoals];
+        for (int cell = 0, i = 0; cell < this.numCells; ++cell)
+        {
+            if (goals[cell] != 0)
+            {
+                this.goalCells[i++] = cell;
+            }
+        }
+
+        this.directionOffsets = new int[]{-this.width, this.width, 1, -1};
+        this.neighbours = new int[NUM_DIRECTIONS][this.numCells];
+        for (int direction = 0; direction < NUM_DIRECTIONS; ++direction)
+        {
+            int offset = this.directionOffsets[direction];
+            for (int cell = 0; cell < this.numCells; ++cell)
+            {
+                int neighbour = cell + offset;
+                boolean open = !walls[cell] && neighbour >= 0 && neighbour < this.numCells && !walls[neighbour];
+                this.neighbours[direction][cell] = open ? neighbour : -1;
+            }
+        }
+
+        Action[] actions = Action.values();
+        this.agentDeltas = new int[actions.length];
+        this.boxDeltas = new int[actions.length];
+        for (Action action : actions)
+        {
+            this.agentDeltas[action.ordinal()] = action.agentRowDelta * this.width + action.agentColDelta;
+            this.boxDeltas[action.ordinal()] = action.boxRowDelta * this.width + action.boxColDelta;
+        }
+    }
+
+    // Allocates an empty padded grid for a level of the given size, with walls set on the padding.
+    public static boolean[] paddedWalls(int numRows, int numCols)
+    {
+        int width = numCols + 2;
+        int height = numRows + 2;
+        boolean[] walls = new boolean[height * width];
+        for (int col = 0; col < width; ++col)
+        {
+            walls[col] = true;
+            walls[(height - 1) * width + col] = true;
+        }
+        for (int row = 0; row < height; ++row)
+        {
+            walls[row * width] = true;
+            walls[row * width + width - 1] = true;
+        }
+        return walls;
+    }
+
+    public int cell(int row, int col)
+    {
+        return (row + 1) * this.width + (col + 1);
+    }
+
+    public int row(int cell)
+    {
+        return cell / this.width - 1;
+    }
+
+    public int col(int cell)
+    {
+        return cell % this.width - 1;
+    }
+
+    // A 64-bit hash of the size, walls, goals and colors, to recognise the level in files written by earlier runs.
+    public long fingerprint()
+    {
+        long h = 0x9E3779B97F4A7C15L;
+        h = (h ^ this.numRows) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ this.numCols) * 0xBF58476D1CE4E5B9L;
+        for (int cell = 0; cell < this.numCells; ++cell)
+        {
+            h = (h ^ (this.walls[cell] ? 0x10000 : this.goals[cell])) * 0x94D049BB133111EBL;
+        }
+        for (Color color : this.agentColors)
+        {
+            h = (h ^ (color == null ? 0 : color.name().hashCode())) * 0xBF58476D1CE4E5B9L;
+        }
+        for (Color color : this.boxColors)
+        {
+            h = (h ^ (color == null ? 0 : color.name().hashCode())) * 0xBF58476D1CE4E5B9L;
+        }
+        return h ^ h >>> 31;
+    }
+}
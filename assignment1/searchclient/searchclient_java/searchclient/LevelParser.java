@@ -0,0 +1,249 @@
+package searchclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+    Parses a level straight from its bytes into the padded grids of Level, without creating a String per line.
+
+    Level files are memory-mapped. From the server, the input is read in large chunks until the "#end" line; the
+    server sends nothing after it until it receives the first action, so no response is consumed by accident.
+    The parser scans the bytes once, recording where the lines of the #initial and #goal sections are. Once the size
+    of the level is known, the grids are filled directly from those bytes.
+*/
+public final class LevelParser
+{
+    private final ByteBuffer bytes;
+    private final int limit;
+
+    // Start and end offsets of the lines of the #initial and #goal sections, two ints per line.
+    private int[] initialLines = new int[256];
+    private int numInitialLines = 0;
+    private int[] goalLines = new int[256];
+    private int numGoalLines = 0;
+
+    private final Color[] agentColors = new Color[10];
+    private final Color[] boxColors = new Color[26];
+
+    private LevelParser(ByteBuffer bytes)
+    {
+        this.bytes = bytes;
+        this.limit = bytes.limit();
+    }
+
+    // Parses a level file through a memory mapping.
+    public static State parse(Path file)
+    throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            return new LevelParser(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())).parse();
+        }
+    }
+
+    // Parses a level sent by the server, reading up to and including the "#end" line.
+    public static State parse(InputStream in)
+    throws IOException
+    {
+        byte[] buffer = new byte[1 << 16];
+        int length = 0;
+        int lineStart = 0;
+        int scanned = 0;
+        boolean end = false;
+        while (!end)
+        {
+            if (length == buffer.length)
+            {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0)
+            {
+                break;
+            }
+            length += read;
+            // Only complete lines are checked, so "#end" is recognised once its newline has arrived.
+            for (; scanned < length && !end; ++scanned)
+            {
+                if (buffer[scanned] == '\n')
+                {
+                    end = isLine(buffer, lineStart, scanned, "#end");
+                    lineStart = scanned + 1;
+                }
+            }
+        }
+        return new LevelParser(ByteBuffer.wrap(buffer, 0, length)).parse();
+    }
+
+    private static boolean isLine(byte[] buffer, int start, int end, String line)
+    {
+        if (end > start && buffer[end - 1] == '\r')
+        {
+            --end;
+        }
+        if (end - start != line.length())
+        {
+            return false;
+        }
+        for (int i = 0; i < line.length(); ++i)
+        {
+            if (buffer[start + i] != line.charAt(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private State parse()
+    throws IOException
+    {
+        String section = "";
+        int pos = 0;
+        while (pos < this.limit)
+        {
+            int end = pos;
+            while (end < this.limit && this.bytes.get(end) != '\n')
+            {
+                ++end;
+            }
+            int contentEnd = end > pos && this.bytes.get(end - 1) == '\r' ? end - 1 : end;
+
+            if (contentEnd > pos && this.bytes.get(pos) == '#')
+            {
+                section = this.string(pos, contentEnd);
+                if (section.equals("#end"))
+                {
+                    break;
+                }
+            }
+            else if (section.equals("#colors"))
+            {
+                this.parseColors(pos, contentEnd);
+            }
+            else if (section.equals("#initial"))
+            {
+                this.initialLines = addLine(this.initialLines, this.numInitialLines++, pos, contentEnd);
+            }
+            else if (section.equals("#goal"))
+            {
+                this.goalLines = addLine(this.goalLines, this.numGoalLines++, pos, contentEnd);
+            }
+            pos = end + 1;
+        }
+        if (!section.equals("#end"))
+        {
+            throw new IOException("Level ended before the #end line.");
+        }
+        return this.buildState();
+    }
+
+    // Parses a line like "blue: 0, A, B".
+    private void parseColors(int start, int end)
+    {
+        int colon = start;
+        while (colon < end && this.bytes.get(colon) != ':')
+        {
+            ++colon;
+        }
+        Color color = Color.fromString(this.string(start, colon).strip());
+        for (int i = colon + 1; i < end; ++i)
+        {
+            int c = this.bytes.get(i);
+            if ('0' <= c && c <= '9')
+            {
+                this.agentColors[c - '0'] = color;
+            }
+            else if ('A' <= c && c <= 'Z')
+            {
+                this.boxColors[c - 'A'] = color;
+            }
+        }
+    }
+
+    private State buildState()
+    {
+        int numRows = this.numInitialLines;
+        int numCols = 0;
+        for (int line = 0; line < numRows; ++line)
+        {
+            numCols = Math.max(numCols, this.initialLines[2 * line + 1] - this.initialLines[2 * line]);
+        }
+        int width = numCols + 2;
+
+        boolean[] walls = Level.paddedWalls(numRows, numCols);
+        char[] boxes = new char[walls.length];
+        int[] agentCells = new int[10];
+        int numAgents = 0;
+        for (int row = 0; row < numRows; ++row)
+        {
+            int start = this.initialLines[2 * row];
+            int end = this.initialLines[2 * row + 1];
+            int cell = (row + 1) * width + 1;
+            for (int i = start; i < end; ++i, ++cell)
+            {
+                int c = this.bytes.get(i);
+                if ('0' <= c && c <= '9')
+                {
+                    agentCells[c - '0'] = cell;
+                    ++numAgents;
+                }
+                else if ('A' <= c && c <= 'Z')
+                {
+                    boxes[cell] = (char) c;
+                }
+                else if (c == '+')
+                {
+                    walls[cell] = true;
+                }
+            }
+        }
+        agentCells = Arrays.copyOf(agentCells, numAgents);
+
+        char[] goals = new char[walls.length];
+        for (int row = 0; row < Math.min(this.numGoalLines, numRows); ++row)
+        {
+            int start = this.goalLines[2 * row];
+            int end = Math.min(this.goalLines[2 * row + 1], start + numCols);
+            int cell = (row + 1) * width + 1;
+            for (int i = start; i < end; ++i, ++cell)
+            {
+                int c = this.bytes.get(i);
+                if (('0' <= c && c <= '9') || ('A' <= c && c <= 'Z'))
+                {
+                    goals[cell] = (char) c;
+                }
+            }
+        }
+
+        Level level = new Level(numRows, numCols, walls, goals, this.agentColors, this.boxColors);
+        return new State(level, agentCells, boxes);
+    }
+
+    private static int[] addLine(int[] lines, int line, int start, int end)
+    {
+        if (2 * line + 2 > lines.length)
+        {
+            lines = Arrays.copyOf(lines, lines.length * 2);
+        }
+        lines[2 * line] = start;
+        lines[2 * line + 1] = end;
+        return lines;
+    }
+
+    private String string(int start, int end)
+    {
+        byte[] chars = new byte[end - start];
+        for (int i = start; i < end; ++i)
+        {
+            chars[i - start] = this.bytes.get(i);
+        }
+        return new String(chars, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,189 @@
+package searchclient;
+
+/*
+    Simplifies a parsed level before the search starts.
+
+    1. Cells that no agent can ever reach are turned into walls. Boxes that no agent can move (no agent has
+       their color) count as walls while flooding, and are walled in as well. Boxes in walled cells stay in
+       the boxes array, so goals they already satisfy stay satisfied.
+    2. The level is cropped to the bounding box of the remaining open cells, goals and boxes.
+
+    Tunnels are found by findTunnels: open cells without a goal whose only open neighbours are opposite each other,
+    so corners and bends are not tunnels. SearchOptions marks them on single-agent levels searched with -wastar or
+    -greedy. The search then moves the agent through a free tunnel in one macro step costing its length (see
+    State.getExpandedStates), and State.extractPlan expands it back into primitive moves. They are not used by -bfs
+    and -dfs, which count a macro step as one step, nor by -astar, since GraphSearch keeps the first path to a state
+    in the frontier even if a later one costs less. Nor are they used with several agents, since a macro step makes
+    every other agent wait.
+*/
+public class LevelPreprocessor
+{
+    public static State preprocess(State initialState)
+    {
+        Level level = initialState.level;
+        boolean[] reachable = reachableCells(initialState);
+
+        // Bounding box of everything that is still relevant.
+        int minRow = Integer.MAX_VALUE;
+        int maxRow = Integer.MIN_VALUE;
+        int minCol = Integer.MAX_VALUE;
+        int maxCol = Integer.MIN_VALUE;
+        int trimmed = 0;
+        for (int row = 0; row < level.numRows; ++row)
+        {
+            for (int col = 0; col < level.numCols; ++col)
+            {
+                int cell = level.cell(row, col);
+                if (!level.walls[cell] && !reachable[cell] && initialState.boxes[cell] == 0)
+                {
+                    ++trimmed;
+                }
+                if (reachable[cell] || level.goals[cell] != 0 || initialState.boxes[cell] != 0)
+                {
+                    minRow = Math.min(minRow, row);
+                    maxRow = Math.max(maxRow, row);
+                    minCol = Math.min(minCol, col);
+                    maxCol = Math.max(maxCol, col);
+                }
+            }
+        }
+
+        // Rebuild the level inside the bounding box. The padding of Level encloses it.
+        int numRows = maxRow - minRow + 1;
+        int numCols = maxCol - minCol + 1;
+        int width = numCols + 2;
+
+        boolean[] walls = Level.paddedWalls(numRows, numCols);
+        char[] goals = new char[walls.length];
+        char[] boxes = new char[walls.length];
+        for (int row = 0; row < numRows; ++row)
+        {
+            for (int col = 0; col < numCols; ++col)
+            {
+                int oldCell = level.cell(row + minRow, col + minCol);
+                int cell = (row + 1) * width + (col + 1);
+                walls[cell] = !reachable[oldCell];
+                goals[cell] = level.goals[oldCell];
+                boxes[cell] = initialState.boxes[oldCell];
+            }
+        }
+        int[] agentCells = new int[initialState.agentCells.length];
+        for (int agent = 0; agent < agentCells.length; ++agent)
+        {
+            int oldCell = initialState.agentCells[agent];
+            agentCells[agent] = (level.row(oldCell) - minRow + 1) * width + (level.col(oldCell) - minCol + 1);
+        }
+
+        Level preprocessed = new Level(numRows, numCols, walls, goals, level.agentColors, level.boxColors);
+
+        System.err.format("Preprocessing: trimmed %,d unreachable cells, cropped %dx%d to %dx%d.\n",
+                          trimmed, level.numRows, level.numCols, numRows, numCols);
+        return new State(preprocessed, agentCells, boxes);
+    }
+
+    // Flood fill from the agents over cells that are neither walls nor boxes that no agent can move.
+    private static boolean[] reachableCells(State initialState)
+    {
+        Level level = initialState.level;
+        boolean[] movable = new boolean[26];
+        for (int box = 0; box < 26; ++box)
+        {
+            for (int agent = 0; agent < initialState.agentCells.length; ++agent)
+            {
+                if (level.boxColors[box] != null && level.boxColors[box] == level.agentColors[agent])
+                {
+                    movable[box] = true;
+                }
+            }
+        }
+
+        boolean[] reachable = new boolean[level.numCells];
+        int[] queue = new int[level.numCells];
+        int head = 0;
+        int tail = 0;
+        for (int cell : initialState.agentCells)
+        {
+            if (!reachable[cell])
+            {
+                reachable[cell] = true;
+                queue[tail++] = cell;
+            }
+        }
+        while (head < tail)
+        {
+            int cell = queue[head++];
+            for (int direction = 0; direction < Level.NUM_DIRECTIONS; ++direction)
+            {
+                int neighbour = level.neighbours[direction][cell];
+                if (neighbour == -1 || reachable[neighbour])
+                {
+                    continue;
+                }
+                char box = initialState.boxes[neighbour];
+                if (box != 0 && !movable[box - 'A'])
+                {
+                    continue;
+                }
+                reachable[neighbour] = true;
+                queue[tail++] = neighbour;
+            }
+        }
+        return reachable;
+    }
+
+    static boolean[] findTunnels(Level level)
+    {
+        boolean[] tunnels = new boolean[level.numCells];
+        for (int cell = 0; cell < level.numCells; ++cell)
+        {
+            if (level.walls[cell] || level.goals[cell] != 0)
+            {
+                continue;
+            }
+            int[][] neighbours = level.neighbours;
+            boolean northSouth = neighbours[Level.NORTH][cell] != -1 && neighbours[Level.SOUTH][cell] != -1;
+            boolean eastWest = neighbours[Level.EAST][cell] != -1 && neighbours[Level.WEST][cell] != -1;
+            boolean northOrSouth = neighbours[Level.NORTH][cell] != -1 || neighbours[Level.SOUTH][cell] != -1;
+            boolean eastOrWest = neighbours[Level.EAST][cell] != -1 || neighbours[Level.WEST][cell] != -1;
+            tunnels[cell] = (northSouth && !eastOrWest) || (eastWest && !northOrSouth);
+        }
+        return tunnels;
+    }
+
+    // Returns the open neighbour of a tunnel cell other than the one we came from.
+    static int nextTunnelCell(Level level, int previous, int cell)
+    {
+        for (int direction = 0; direction < Level.NUM_DIRECTIONS; ++direction)
+        {
+            int neighbour = level.neighbours[direction][cell];
+            if (neighbour != -1 && neighbour != previous)
+            {
+                return neighbour;
+            }
+        }
+        return -1;
+    }
+
+    // Returns the Move action taking an agent from cell to the neighbouring cell next.
+    static Action moveBetween(Level level, int cell, int next)
+    {
+        int delta = next - cell;
+        if (delta == -level.width)
+        {
+            return Action.MoveN;
+        }
+        else if (delta == level.width)
+        {
+            return Action.MoveS;
+        }
+        else if (delta == 1)
+        {
+            return Action.MoveE;
+        }
+        return Action.MoveW;
+    }
+
+    private LevelPreprocessor()
+    {
+    }
+}
@@ -0,0 +1,133 @@
+package searchclient;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Keeps a search within a heap budget by degrading it, rather than letting it run into an OutOfMemoryError.
+
+    The governor sets a collection usage threshold at limit of the old generation: the search is over budget when
+    the old generation is still above the threshold right after a garbage collection, i.e. when it is full of live
+    states. GraphSearch asks every few hundred expansions (the threshold is read at most every POLL_INTERVAL, as
+    reading it takes tens of microseconds), and relieves the pressure one step at a time, with a collection of the
+    old generation in between to see whether the step was enough:
+        1. An exact closed list is replaced by a bit-state closed list of a sixteenth of the heap, holding the
+           expanded and frontier states. From then on states may be missed, as with -bitstate.
+        2. The worse half of the frontier is dropped, as in SMA*: the states the frontier would expand last. Dropped
+           states are counted as pruned in the metrics. They are never generated again, so a search that runs out
+           of states after pruning ends with MEMORY rather than EXHAUSTED.
+    If the frontier cannot be pruned (DFS), the search ends with MEMORY.
+*/
+public class MemoryGovernor
+{
+    private static final long POLL_INTERVAL = 100_000_000L;
+    private static final int CHECK_INTERVAL = 256;
+    private static final double BIT_STATE_HEAP_FRACTION = 1 / 16d;
+    private static final double MB = 1024 * 1024;
+
+    private final MemoryPoolMXBean oldGeneration;
+    private final List<GarbageCollectorMXBean> collectors;
+    private long lastPoll = 0;
+    private long collectionsAtRelief = -1;
+
+    // Governs searches so that live states fill at most limit (0 to 1) of the old generation.
+    public MemoryGovernor(double limit)
+    {
+        // The old generation is the heap pool with the largest maximum, typically the whole heap for G1.
+        MemoryPoolMXBean oldGeneration = null;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() &&
+                (oldGeneration == null || pool.getUsage().getMax() > oldGeneration.getUsage().getMax()))
+            {
+                oldGeneration = pool;
+            }
+        }
+        if (oldGeneration != null && oldGeneration.getUsage().getMax() > 0)
+        {
+            oldGeneration.setCollectionUsageThreshold((long) (oldGeneration.getUsage().getMax() * limit));
+        }
+        else
+        {
+            oldGeneration = null;
+        }
+        this.oldGeneration = oldGeneration;
+
+        // The collectors that can free the old generation.
+        this.collectors = new ArrayList<>();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            if (oldGeneration != null &&
+                Arrays.asList(collector.getMemoryPoolNames()).contains(oldGeneration.getName()))
+            {
+                this.collectors.add(collector);
+            }
+        }
+    }
+
+    // True if the search is over budget and has not been relieved since the old generation was last collected.
+    public boolean isOverBudget(long expanded)
+    {
+        if (this.oldGeneration == null || expanded % CHECK_INTERVAL != 0)
+        {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (now - this.lastPoll < POLL_INTERVAL)
+        {
+            return false;
+        }
+        this.lastPoll = now;
+        return this.oldGeneration.isCollectionUsageThresholdExceeded() && this.collections() > this.collectionsAtRelief;
+    }
+
+    // Replaces the exact closed list by a bit-state closed list holding the expanded and frontier states.
+    public ClosedList compact(SearchContext context, ClosedList explored, Frontier frontier)
+    {
+        this.collectionsAtRelief = this.collections();
+        ClosedList compact = explored.compact((long) (Memory.max() * BIT_STATE_HEAP_FRACTION * MB));
+        for (State state : frontier)
+        {
+            compact.add(state);
+        }
+        this.report(context, String.format("replaced the closed list of %,d states by %s", explored.size(),
+                                           compact.getName()));
+        return compact;
+    }
+
+    // Drops the worse half of the frontier, and returns false if the frontier could not be pruned.
+    public boolean prune(SearchContext context, Frontier frontier)
+    {
+        this.collectionsAtRelief = this.collections();
+        int size = frontier.size();
+        int dropped = frontier.prune(size / 2);
+        context.metrics.pruned += dropped;
+        this.report(context, String.format("dropped %,d of %,d frontier states", dropped, size));
+        return dropped > 0;
+    }
+
+    private long collections()
+    {
+        long collections = 0;
+        for (GarbageCollectorMXBean collector : this.collectors)
+        {
+            collections += collector.getCollectionCount();
+        }
+        return collections;
+    }
+
+    private void report(SearchContext context, String relief)
+    {
+        if (context.verbose)
+        {
+            System.err.format("[Memory: %s at %,.0f MB of %,.0f MB after collection, %s]\n",
+                              this.oldGeneration.getName(), this.oldGeneration.getCollectionUsage().getUsed() / MB,
+                              this.oldGeneration.getUsage().getMax() / MB, relief);
+        }
+    }
+}
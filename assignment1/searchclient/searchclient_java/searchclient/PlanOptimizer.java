@@ -0,0 +1,179 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    Shortens a plan after the search, before it is sent to the server.
+
+    First, loops are cut: if the agents and boxes are back where they were some joint actions earlier, the actions in
+    between are dropped, and the plan ends at the first state that satisfies every goal. The graph searches never
+    revisit a state on their path, but plans read from files or the solution cache may. In single-agent plans, each
+    run of moves between two pushes or pulls is then replaced by a shortest walk between the same cells, which cuts
+    the detours of greedy and weighted searches. In multi-agent plans, actions are moved to the previous joint action
+    wherever their agent is idle there and both joint actions remain applicable and free of conflicts, with the rules
+    of the server (see PlanSimulator); joint actions that end up with only NoOps are dropped. Moving an action one
+    step earlier does not change the state after the later step, so each move is checked locally.
+
+    The result is checked by the PlanSimulator, and the plan is returned unchanged if anything went wrong.
+*/
+public class PlanOptimizer
+{
+    public static Action[][] optimize(State initialState, Action[][] plan)
+    {
+        if (!PlanSimulator.simulate(initialState, plan).isSolution())
+        {
+            return plan;
+        }
+        List<Action[]> actions = removeLoops(initialState, plan);
+        if (initialState.agentCells.length == 1)
+        {
+            actions = shortenWalks(initialState, actions);
+        }
+        else
+        {
+            compress(initialState, actions);
+        }
+        Action[][] optimized = actions.toArray(new Action[0][]);
+        if (optimized.length >= plan.length || !PlanSimulator.simulate(initialState, optimized).isSolution())
+        {
+            return plan;
+        }
+        return optimized;
+    }
+
+    // The plan without the joint actions between two visits of the same state, up to the first goal state.
+    private static List<Action[]> removeLoops(State initialState, Action[][] plan)
+    {
+        State state = copy(initialState);
+        List<Action[]> actions = new ArrayList<>(plan.length);
+        // The state after each kept joint action, and the number of kept joint actions leading to each state.
+        List<State> states = new ArrayList<>(plan.length + 1);
+        Map<State, Integer> visited = new HashMap<>();
+        states.add(copy(state));
+        visited.put(states.get(0), 0);
+        for (Action[] jointAction : plan)
+        {
+            if (state.isGoalState())
+            {
+                break;
+            }
+            state.applyInPlace(jointAction);
+            State reached = copy(state);
+            Integer previous = visited.get(reached);
+            if (previous != null)
+            {
+                while (actions.size() > previous)
+                {
+                    actions.remove(actions.size() - 1);
+                    visited.remove(states.remove(states.size() - 1));
+                }
+                continue;
+            }
+            actions.add(jointAction);
+            states.add(reached);
+            visited.put(reached, actions.size());
+        }
+        return actions;
+    }
+
+    // The single-agent plan with each run of moves replaced by a shortest walk, if that is shorter.
+    private static List<Action[]> shortenWalks(State initialState, List<Action[]> actions)
+    {
+        State state = copy(initialState);
+        List<Action[]> shortened = new ArrayList<>(actions.size());
+        int step = 0;
+        while (step < actions.size())
+        {
+            if (actions.get(step)[0].type != ActionType.Move)
+            {
+                state.applyInPlace(actions.get(step));
+                shortened.add(actions.get(step++));
+                continue;
+            }
+            // The boxes stay where they are during the walk.
+            State start = copy(state);
+            int first = step;
+            while (step < actions.size() && actions.get(step)[0].type == ActionType.Move)
+            {
+                state.applyInPlace(actions.get(step++));
+            }
+            int walked = shortened.size();
+            start.addWalk(shortened, start.agentCells[0], state.agentCells[0]);
+            if (shortened.size() - walked >= step - first)
+            {
+                shortened.subList(walked, shortened.size()).clear();
+                shortened.addAll(actions.subList(first, step));
+            }
+        }
+        return shortened;
+    }
+
+    // Moves actions to the previous joint action where their agent is idle, until none can move, and drops the joint
+    // actions left with only NoOps.
+    private static void compress(State initialState, List<Action[]> actions)
+    {
+        for (int i = 0; i < actions.size(); ++i)
+        {
+            actions.set(i, actions.get(i).clone());
+        }
+        boolean moved = true;
+        while (moved)
+        {
+            moved = false;
+            // The state before joint action step - 1.
+            State state = copy(initialState);
+            for (int step = 1; step < actions.size(); ++step)
+            {
+                Action[] earlier = actions.get(step - 1);
+                Action[] later = actions.get(step);
+                for (int agent = 0; agent < later.length; ++agent)
+                {
+                    if (later[agent] == Action.NoOp || earlier[agent] != Action.NoOp)
+                    {
+                        continue;
+                    }
+                    earlier[agent] = later[agent];
+                    later[agent] = Action.NoOp;
+                    if (isExecutable(state, earlier, later))
+                    {
+                        moved = true;
+                    }
+                    else
+                    {
+                        later[agent] = earlier[agent];
+                        earlier[agent] = Action.NoOp;
+                    }
+                }
+                state.step(earlier, false);
+            }
+            actions.removeIf(PlanOptimizer::isIdle);
+        }
+    }
+
+    // True if earlier can be executed in state, and later after it. The state is left as it was.
+    private static boolean isExecutable(State state, Action[] earlier, Action[] later)
+    {
+        if (PlanSimulator.check(state, earlier) != null)
+        {
+            return false;
+        }
+        state.step(earlier, false);
+        boolean executable = PlanSimulator.check(state, later) == null;
+        state.step(earlier, true);
+        return executable;
+    }
+
+    private static boolean isIdle(Action[] jointAction)
+    {
+        return Arrays.stream(jointAction).allMatch(action -> action == Action.NoOp);
+    }
+
+    private static State copy(State state)
+    {
+        return new State(state.level, state.agentCells.clone(), state.boxes.clone());
+    }
+}
@@ -0,0 +1,131 @@
+package searchclient;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/*
+    Sends a plan to the server without waiting for the response to each joint action before sending the next.
+
+    Up to window joint actions may be unanswered at any time. They are written through a buffer and flushed together,
+    while a reader thread consumes the responses and checks them. As soon as the server reports a failed action, no
+    further actions are sent. Actions that were already on their way are still executed by the server, and their
+    responses are still read, so the server never blocks on a full pipe. A window of 1 is the lock-step exchange.
+*/
+public class PlanSender
+{
+    public static final int DEFAULT_WINDOW = 256;
+    private static final int DONE = -1;
+
+    private final BufferedReader serverMessages;
+    private final BufferedWriter out;
+    private final int window;
+
+    private volatile int failedStep = -1;
+    private volatile String failedResponse = null;
+
+    public PlanSender(BufferedReader serverMessages, OutputStream out, int window)
+    {
+        this.serverMessages = serverMessages;
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), 1 << 16);
+        this.window = Math.max(1, window);
+    }
+
+    // Sends the plan, and returns the index of the first joint action the server reported as failed, or -1.
+    public int send(Action[][] plan)
+    throws IOException, InterruptedException
+    {
+        Semaphore permits = new Semaphore(this.window);
+        BlockingQueue<Integer> sent = new LinkedBlockingQueue<>();
+
+        Thread reader = new Thread(() -> {
+            try
+            {
+                int step;
+                while ((step = sent.take()) != DONE)
+                {
+                    String response = this.readResponse();
+                    if (response == null)
+                    {
+                        // The server closed the connection, so nothing else will be executed.
+                        this.fail(step, "<no response>");
+                    }
+                    else if (response.contains("false"))
+                    {
+                        this.fail(step, response);
+                    }
+                    permits.release();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }, "server responses");
+        reader.setDaemon(true);
+        reader.start();
+
+        int step = 0;
+        while (step < plan.length && this.failedStep == -1)
+        {
+            // Wait for room in the window, then send everything that fits without waiting.
+            permits.acquire();
+            do
+            {
+                this.write(plan[step]);
+                sent.put(step);
+                ++step;
+            }
+            while (step < plan.length && this.failedStep == -1 && permits.tryAcquire());
+            this.out.flush();
+        }
+        sent.put(DONE);
+        reader.join();
+        return this.failedStep;
+    }
+
+    // The response the server sent for the first failed joint action, or null.
+    public String failedResponse()
+    {
+        return this.failedResponse;
+    }
+
+    private String readResponse()
+    {
+        try
+        {
+            return this.serverMessages.readLine();
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    private synchronized void fail(int step, String response)
+    {
+        if (this.failedStep == -1)
+        {
+            this.failedResponse = response;
+            this.failedStep = step;
+        }
+    }
+
+    private void write(Action[] jointAction)
+    throws IOException
+    {
+        this.out.write(jointAction[0].name);
+        for (int action = 1; action < jointAction.length; ++action)
+        {
+            this.out.write('|');
+            this.out.write(jointAction[action].name);
+        }
+        this.out.write('\n');
+    }
+}
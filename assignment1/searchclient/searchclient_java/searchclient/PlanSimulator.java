@@ -0,0 +1,164 @@
+package searchclient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    Executes a plan against a level in-process, with the rules of the server: every action of a joint action must
+    be applicable in the state before the step, and no two actions may move into the same cell or move the same box.
+    Like on the server, a failing joint action leaves the state unchanged and the plan carries on.
+
+    The simulator steps a single copy of the initial state through the plan, so it allocates nothing per step.
+    To check a plan file (one joint action per line, as sent to the server) from the command line:
+        java searchclient.PlanSimulator <level.lvl> <plan.txt>
+*/
+public class PlanSimulator
+{
+    private static final Map<String, Action> ACTIONS_BY_NAME = new HashMap<>();
+
+    static
+    {
+        for (Action action : Action.values())
+        {
+            ACTIONS_BY_NAME.put(action.name, action);
+        }
+    }
+
+    public static class Result
+    {
+        // Number of joint actions in the plan.
+        public final int steps;
+        // Index of the first joint action that failed and why, or -1 and null if every action succeeded.
+        public final int failedStep;
+        public final String failure;
+        // Number of joint actions after which every goal was first satisfied, or -1 if that never happened.
+        public final int solvedAfter;
+        // Number of goals that are not satisfied at the end of the plan.
+        public final int unsatisfiedGoals;
+
+        Result(int steps, int failedStep, String failure, int solvedAfter, int unsatisfiedGoals)
+        {
+            this.steps = steps;
+            this.failedStep = failedStep;
+            this.failure = failure;
+            this.solvedAfter = solvedAfter;
+            this.unsatisfiedGoals = unsatisfiedGoals;
+        }
+
+        public boolean isValid()
+        {
+            return this.failedStep == -1;
+        }
+
+        // True if every step succeeded and the goals were reached.
+        public boolean isSolution()
+        {
+            return this.isValid() && this.solvedAfter != -1;
+        }
+
+        @Override
+        public String toString()
+        {
+            String validity = this.isValid() ? "valid" :
+                              String.format("invalid at step %,d (%s)", this.failedStep, this.failure);
+            String goals = this.solvedAfter != -1 ? String.format("solved after %,d steps", this.solvedAfter) :
+                           String.format("%,d goals unsatisfied", this.unsatisfiedGoals);
+            return String.format("Plan of %,d steps is %s, %s.", this.steps, validity, goals);
+        }
+    }
+
+    public static Result simulate(State initialState, Action[][] plan)
+    {
+        State state = new State(initialState.level, initialState.agentCells.clone(), initialState.boxes.clone());
+        int failedStep = -1;
+        String failure = null;
+        int solvedAfter = state.isGoalState() ? 0 : -1;
+        for (int step = 0; step < plan.length; ++step)
+        {
+            String error = check(state, plan[step]);
+            if (error != null)
+            {
+                if (failedStep == -1)
+                {
+                    failedStep = step;
+                    failure = error;
+                }
+                continue;
+            }
+            state.applyInPlace(plan[step]);
+            if (solvedAfter == -1 && state.isGoalState())
+            {
+                solvedAfter = step + 1;
+            }
+        }
+        return new Result(plan.length, failedStep, failure, solvedAfter, state.getGoals());
+    }
+
+    // Returns why the joint action cannot be executed in state, or null if it can.
+    static String check(State state, Action[] jointAction)
+    {
+        int numAgents = state.agentCells.length;
+        if (jointAction == null || jointAction.length != numAgents)
+        {
+            return String.format("expected %d actions, got %d", numAgents,
+                                 jointAction == null ? 0 : jointAction.length);
+        }
+        for (int agent = 0; agent < numAgents; ++agent)
+        {
+            if (jointAction[agent] == null)
+            {
+                return String.format("no action for agent %d", agent);
+            }
+            if (!state.isApplicable(agent, jointAction[agent]))
+            {
+                return String.format("%s is not applicable for agent %d", jointAction[agent].name, agent);
+            }
+        }
+        if (state.isConflicting(jointAction))
+        {
+            return "actions conflict";
+        }
+        return null;
+    }
+
+    // Parses a joint action in the format sent to the server, e.g. "Move(E)|NoOp". Unknown names become null.
+    public static Action[] parseJointAction(String line)
+    {
+        String[] names = line.split("\\|");
+        Action[] jointAction = new Action[names.length];
+        for (int agent = 0; agent < names.length; ++agent)
+        {
+            jointAction[agent] = ACTIONS_BY_NAME.get(names[agent].strip());
+        }
+        return jointAction;
+    }
+
+    public static void main(String[] args)
+    throws IOException
+    {
+        if (args.length != 2)
+        {
+            System.err.println("Usage: java searchclient.PlanSimulator <level.lvl> <plan.txt>");
+            System.exit(2);
+        }
+        State initialState = LevelParser.parse(Paths.get(args[0]));
+        List<Action[]> plan = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(args[1]), StandardCharsets.US_ASCII))
+        {
+            if (!line.isBlank() && !line.startsWith("#"))
+            {
+                plan.add(parseJointAction(line));
+            }
+        }
+
+        Result result = simulate(initialState, plan.toArray(new Action[0][]));
+        System.out.println(result);
+        System.exit(result.isSolution() ? 0 : 1);
+    }
+}
@@ -0,0 +1,239 @@
+package searchclient;
+
+import java.util.Arrays;
+
+/*
+    An FF-style relaxed-plan heuristic: the length of a plan for the relaxation in which nothing ever leaves a cell,
+    so agents and boxes may pass through and stand on each other. Walls and colors still hold.
+
+    Each unsatisfied box goal takes the box of its letter and the agent of the box's color that can bring it there
+    at the least cost, the agent's walk to the box plus the box's way to the goal, and each box serves one goal.
+    Agents with a goal of their own walk to it. The relaxed plan is the union of these walks and ways: every step of
+    a box is an action, while a cell an agent walks to counts once however many of its walks pass it, and the cells
+    it pushes or pulls a box through are walked for free. Distances come from a DistanceTable over the flattened
+    cells, and the buffers are reused between calls, so an evaluation allocates nothing.
+
+    The helpful actions of a state are the first actions of its relaxed plan: the first move of each agent towards
+    the box it is to bring or its own goal, and the push or pull that moves a box it is next to one step along its
+    way. A child reached by a helpful action of its parent is helpful, and is expanded first among states of equal f.
+    Values are cached in the states, so each state is evaluated once, and each expanded state once more for its
+    helpful actions.
+*/
+final class RelaxedPlan
+{
+    // The value of a state from which a goal cannot be reached even in the relaxation.
+    static final int DEAD_END = 1 << 20;
+    private static final Action[] ACTIONS = Action.values();
+    private static final long TABLE_BYTES = 64L << 20;
+
+    private final Level level;
+    private final DistanceTable distances;
+    private final int numAgents;
+
+    // Scratch buffers of an evaluation: the distances from each agent, the cells of the boxes, and the stamps of
+    // the boxes taken for a goal and of the cells each agent has walked to, indexed by agent * numCells + cell.
+    private final short[][] agentRows;
+    private final int[] boxCells;
+    private final int[] taken;
+    private final int[] walked;
+    private int stamp = 0;
+    // Bitmasks of helpful action ordinals per agent, of the state evaluated last and of the last parent.
+    private final int[] helpful;
+    private final int[] parentHelpful;
+    private State parent = null;
+
+    RelaxedPlan(State initialState)
+    {
+        this.level = initialState.level;
+        this.distances = new DistanceTable(this.level, TABLE_BYTES);
+        this.numAgents = initialState.agentCells.length;
+        this.agentRows = new short[this.numAgents][];
+        this.boxCells = new int[this.level.numCells];
+        this.taken = new int[this.level.numCells];
+        this.walked = new int[this.numAgents * this.level.numCells];
+        this.helpful = new int[this.numAgents];
+        this.parentHelpful = new int[this.numAgents];
+    }
+
+    // The length of the relaxed plan of s, computed once per state.
+    int h(State s)
+    {
+        if (s.h < 0)
+        {
+            State parent = s.parent;
+            if (parent != null && parent != this.parent)
+            {
+                this.evaluate(parent);
+                System.arraycopy(this.helpful, 0, this.parentHelpful, 0, this.numAgents);
+                this.parent = parent;
+            }
+            s.h = this.evaluate(s);
+            s.helpful = parent != null && this.isHelpful(s);
+        }
+        return s.h;
+    }
+
+    // True if an agent's action in the joint action that produced s is helpful in its parent.
+    private boolean isHelpful(State s)
+    {
+        Action[] jointAction = JointAction.decode(s.jointActionCode);
+        for (int agent = 0; agent < this.numAgents; ++agent)
+        {
+            if ((this.parentHelpful[agent] >>> jointAction[agent].ordinal() & 1) != 0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Computes the relaxed plan of s, and leaves its helpful actions in this.helpful.
+    private int evaluate(State s)
+    {
+        Level level = this.level;
+        char[] goals = level.goals;
+        char[] boxes = s.boxes;
+        Arrays.fill(this.helpful, 0);
+        if (++this.stamp == Integer.MAX_VALUE)
+        {
+            Arrays.fill(this.taken, 0);
+            Arrays.fill(this.walked, 0);
+            this.stamp = 1;
+        }
+        for (int agent = 0; agent < this.numAgents; ++agent)
+        {
+            this.agentRows[agent] = this.distances.from(s.agentCells[agent]);
+        }
+        int numBoxes = 0;
+        for (int cell = 0; cell < boxes.length; ++cell)
+        {
+            if (boxes[cell] != 0)
+            {
+                this.boxCells[numBoxes++] = cell;
+            }
+        }
+
+        int h = 0;
+        for (int goal : level.goalCells)
+        {
+            char letter = goals[goal];
+            if ('0' <= letter && letter <= '9' || boxes[goal] == letter)
+            {
+                continue;
+            }
+            short[] toGoal = this.distances.from(goal);
+            Color color = level.boxColors[letter - 'A'];
+            int box = -1;
+            int boxAgent = -1;
+            int bestCost = Integer.MAX_VALUE;
+            for (int i = 0; i < numBoxes; ++i)
+            {
+                int cell = this.boxCells[i];
+                // A box already on a goal of its letter stays there.
+                if (boxes[cell] != letter || goals[cell] == letter || this.taken[cell] == this.stamp ||
+                    toGoal[cell] == DistanceTable.UNREACHABLE)
+                {
+                    continue;
+                }
+                for (int agent = 0; agent < this.numAgents; ++agent)
+                {
+                    int walk = this.agentRows[agent][cell];
+                    if (level.agentColors[agent] == color && walk != DistanceTable.UNREACHABLE &&
+                        toGoal[cell] + walk - 1 < bestCost)
+                    {
+                        box = cell;
+                        boxAgent = agent;
+                        bestCost = toGoal[cell] + walk - 1;
+                    }
+                }
+            }
+            if (box == -1)
+            {
+                return DEAD_END;
+            }
+            this.taken[box] = this.stamp;
+            h += toGoal[box] + this.walk(s, boxAgent, box, true);
+            this.addHelpfulPushes(s, boxAgent, box, next(level, box, toGoal));
+            // The agent follows the box along its way.
+            int offset = boxAgent * level.numCells;
+            for (int cell = box; cell != goal; cell = next(level, cell, toGoal))
+            {
+                this.walked[offset + cell] = this.stamp;
+            }
+        }
+        for (int goal : level.goalCells)
+        {
+            char digit = goals[goal];
+            if ('0' <= digit && digit <= '9' && s.agentCells[digit - '0'] != goal)
+            {
+                int agent = digit - '0';
+                if (this.agentRows[agent][goal] == DistanceTable.UNREACHABLE)
+                {
+                    return DEAD_END;
+                }
+                h += this.walk(s, agent, goal, false);
+            }
+        }
+        return h;
+    }
+
+    // Counts the cells of a shortest walk of agent to target, or to next to it if adjacent is set, that it has not
+    // walked to yet in this relaxed plan, and marks them. Its first move is helpful.
+    private int walk(State s, int agent, int target, boolean adjacent)
+    {
+        short[] row = this.agentRows[agent];
+        int offset = agent * this.level.numCells;
+        int cell = adjacent ? next(this.level, target, row) : target;
+        int count = 0;
+        while (row[cell] > 0)
+        {
+            if (this.walked[offset + cell] != this.stamp)
+            {
+                this.walked[offset + cell] = this.stamp;
+                ++count;
+            }
+            if (row[cell] == 1)
+            {
+                this.helpful[agent] |= 1 << LevelPreprocessor.moveBetween(this.level, s.agentCells[agent], cell)
+                                                            .ordinal();
+            }
+            cell = next(this.level, cell, row);
+        }
+        return count;
+    }
+
+    // Marks the pushes and pulls of agent that move box to next as helpful. The agent of a push-level state stands
+    // for its whole region, so there it need not be next to the box.
+    private void addHelpfulPushes(State s, int agent, int box, int next)
+    {
+        int agentCell = s.agentCells[agent];
+        boolean anywhere = this.level.pushMacros;
+        for (Action action : ACTIONS)
+        {
+            int ordinal = action.ordinal();
+            if (this.level.boxDeltas[ordinal] != next - box)
+            {
+                continue;
+            }
+            if ((action.type == ActionType.Push && (anywhere || agentCell + this.level.agentDeltas[ordinal] == box)) ||
+                (action.type == ActionType.Pull && (anywhere || agentCell == next)))
+            {
+                this.helpful[agent] |= 1 << ordinal;
+            }
+        }
+    }
+
+    // The neighbour of cell one step closer to the origin of row. Cell must be reachable and not the origin.
+    private static int next(Level level, int cell, short[] row)
+    {
+        for (int direction = 0; direction < Level.NUM_DIRECTIONS; ++direction)
+        {
+            int neighbour = level.neighbours[direction][cell];
+            if (neighbour != -1 && row[neighbour] == row[cell] - 1)
+            {
+                return neighbour;
+            }
+        }
+        return cell;
+    }
+}
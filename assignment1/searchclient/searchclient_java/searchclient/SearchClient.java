@@ -1,15 +1,16 @@
 package searchclient;
 
 import java.io.BufferedReader;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Locale;
-
-import searchclient.Heuristic.*;
 
 public class SearchClient
 {
@@ -64,39 +65,38 @@ public class SearchClient
                 line = serverMessages.readLine();
         }
         int numAgents = 0;
-        int[] agentRows = new int[10];
-        int[] agentCols = new int[10];
-        boolean[][] walls = new boolean[numRows][numCols];
-        char[][] boxes = new char[numRows][numCols];
+        int[] agentCells = new int[10];
+        int width = numCols + 2;
+        boolean[] walls = Level.paddedWalls(numRows, numCols);
+        char[] boxes = new char[walls.length];
         for (int row = 0; row < numRows; ++row)
         {
             line = levelLines.get(row);
             for (int col = 0; col < line.length(); ++col)
             {
                 char c = line.charAt(col);
+                int cell = (row + 1) * width + (col + 1);
 
                 if ('0' <= c && c <= '9')
                 {
-                    agentRows[c - '0'] = row;
-                    agentCols[c - '0'] = col;
+                    agentCells[c - '0'] = cell;
                     ++numAgents;
                 }
                 else if ('A' <= c && c <= 'Z')
                 {
-                    boxes[row][col] = c;
+                    boxes[cell] = c;
                 }
                 else if (c == '+')
                 {
-                    walls[row][col] = true;
+                    walls[cell] = true;
                 }
             }
         }
-        agentRows = Arrays.copyOf(agentRows, numAgents);
-        agentCols = Arrays.copyOf(agentCols, numAgents);
+        agentCells = Arrays.copyOf(agentCells, numAgents);
 
         // Read goal state
         // line is currently "#goal"
-        char[][] goals = new char[numRows][numCols];
+        char[] goals = new char[walls.length];
         line = serverMessages.readLine();
         int row = 0;
         while (!line.startsWith("#"))
@@ -107,7 +107,7 @@ public class SearchClient
 
                 if (('0' <= c && c <= '9') || ('A' <= c && c <= 'Z'))
                 {
-                    goals[row][col] = c;
+                    goals[(row + 1) * width + (col + 1)] = c;
                 }
             }
 
@@ -118,112 +118,187 @@ public class SearchClient
         // End
         // line is currently "#end"
 
-        return new State(agentRows, agentCols, agentColors, walls, boxes, boxColors, goals);
+        Level level = new Level(numRows, numCols, walls, goals, agentColors, boxColors);
+        return new State(level, agentCells, boxes);
     }
 
-    public static Action[][] search(State initialState, Frontier frontier)
+    public static Action[][] search(State initialState, Frontier frontier, ClosedList explored)
+    {
+        return search(initialState, frontier, explored, new SearchContext());
+    }
+
+    public static Action[][] search(State initialState, Frontier frontier, ClosedList explored,
+                                    SearchContext context)
+    {
+        System.err.format("Starting %s with a %s closed list.\n", frontier.getName(), explored.getName());
+
+        return GraphSearch.search(initialState, frontier, explored, context);
+    }
+
+    // Searches for a plan with the options, within the limits of context.
+    private static Action[][] solve(State initialState, SearchOptions options, SearchContext context)
+    throws IOException
     {
-        System.err.format("Starting %s.\n", frontier.getName());
+        if (options.heapLimit > 0)
+        {
+            context.memoryGovernor = new MemoryGovernor(options.heapLimit / 100d);
+        }
+        if (options.checkpointFile != null)
+        {
+            if (options.externalBytes >= 0)
+            {
+                // Its layers are on disk already, but it does not keep the parents of frontier states in memory.
+                System.err.println("The external-memory search cannot be checkpointed, ignoring -checkpoint.");
+            }
+            else
+            {
+                context.checkpointer = new Checkpointer(Paths.get(options.checkpointFile), options.checkpointInterval);
+            }
+        }
+        PrintStream metrics = null;
+        if (options.metricsFile != null)
+        {
+            metrics = new PrintStream(new FileOutputStream(options.metricsFile), true, "US-ASCII");
+            context.metrics.exportTo(metrics, null, 1000);
+        }
+
+        // Search for a plan.
+        Action[][] plan;
+        try
+        {
+            plan = options.search(initialState, context);
+        }
+        catch (OutOfMemoryError ex)
+        {
+            // Only if the governor is disabled, or the heap filled up faster than it could react.
+            System.err.println("Maximum memory usage exceeded.");
+            plan = null;
+        }
+        if (metrics != null)
+        {
+            metrics.close();
+        }
 
-        return GraphSearch.search(initialState, frontier);
+        return plan;
+    }
+
+    // Cuts loops from the plan and moves actions of idle agents earlier, see PlanOptimizer.
+    private static Action[][] optimize(State initialState, Action[][] plan)
+    {
+        long start = System.nanoTime();
+        Action[][] optimized = PlanOptimizer.optimize(initialState, plan);
+        if (optimized.length < plan.length)
+        {
+            System.err.format("Shortened the plan from %,d to %,d joint actions in %.3f s.\n", plan.length,
+                              optimized.length, (System.nanoTime() - start) / 1_000_000_000d);
+        }
+        return optimized;
     }
 
     public static void main(String[] args)
     throws IOException
+    {
+        if (!run(args, System.in, System.out, new SearchContext()))
+        {
+            System.exit(0);
+        }
+    }
+
+    // Plays one level with the server at the other end of in and out: parses it, searches with the options in args
+    // within the limits of context, and sends the plan. Returns false if no plan was found.
+    public static boolean run(String[] args, InputStream in, PrintStream out, SearchContext context)
+    throws IOException
     {
         // Use stderr to print to the console.
         System.err.println("SearchClient initializing. I am sending this using the error output stream.");
 
         // Send client name to server.
-        System.out.println("SearchClient");
+        out.println("SearchClient");
 
         // We can also print comments to stdout by prefixing with a #.
-        System.out.println("#This is a comment.");
+        out.println("#This is a comment.");
 
         // Parse the level.
-        BufferedReader serverMessages = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII));
-        State initialState = SearchClient.parseLevel(serverMessages);
+        State parsedState = LevelParser.parse(in);
+        BufferedReader serverMessages = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+        State initialState = LevelPreprocessor.preprocess(parsedState);
 
-        // Select search strategy.
-        Frontier frontier;
-        if (args.length > 0)
-        {
-            switch (args[0].toLowerCase(Locale.ROOT))
-            {
-                case "-bfs":
-                    frontier = new FrontierBFS();
-                    break;
-                case "-dfs":
-                    frontier = new FrontierDFS();
-                    break;
-                case "-astar":
-                    frontier = new FrontierBestFirst(new HeuristicAStar(initialState));
-                    break;
-                case "-wastar":
-                    int w = 5;
-                    if (args.length > 1)
-                    {
-                        try
-                        {
-                            w = Integer.parseUnsignedInt(args[1]);
-                        }
-                        catch (NumberFormatException e)
-                        {
-                            System.err.println("Couldn't parse weight argument to -wastar as integer, using default.");
-                        }
-                    }
-                    frontier = new FrontierBestFirst(new HeuristicWeightedAStar(initialState, w));
-                    break;
-                case "-greedy":
-                    frontier = new FrontierBestFirst(new HeuristicGreedy(initialState));
-                    break;
-                default:
-                    frontier = new FrontierBFS();
-                    System.err.println("Defaulting to BFS search. Use arguments -bfs, -dfs, -astar, -wastar, or " +
-                                       "-greedy to set the search strategy.");
-            }
-        }
-        else
+        // Select search strategy and options.
+        SearchOptions options = SearchOptions.parse(args);
+        if (options.strategy == null)
         {
-            frontier = new FrontierBFS();
             System.err.println("Defaulting to BFS search. Use arguments -bfs, -dfs, -astar, -wastar, or -greedy to " +
                                "set the search strategy.");
         }
 
-        // Search for a plan.
+        // A cached plan is replayed, unless this strategy has not searched the level yet: it then looks for a
+        // shorter plan, and the cached one is sent if there is none.
+        SolutionCache cache = options.cacheDirectory == null ? null
+                                                             : new SolutionCache(Paths.get(options.cacheDirectory));
+        SolutionCache.Entry cached = cache == null ? null : cache.lookup(parsedState);
         Action[][] plan;
-        try
+        if (cached != null && cached.strategies.contains(options.strategyName()))
         {
-            plan = SearchClient.search(initialState, frontier);
+            System.err.format("Replaying the cached solution of length %,d.\n", cached.plan.length);
+            plan = cached.plan;
         }
-        catch (OutOfMemoryError ex)
+        else
         {
-            System.err.println("Maximum memory usage exceeded.");
-            plan = null;
+            if (cached != null)
+            {
+                System.err.format("Searching for a solution shorter than the cached one of length %,d.\n",
+                                  cached.plan.length);
+                context.costBound = cached.plan.length;
+            }
+            plan = solve(initialState, options, context);
+            if (plan != null)
+            {
+                plan = optimize(parsedState, plan);
+            }
+            if (cache != null && (plan != null || context.outcome == SearchContext.Outcome.EXHAUSTED))
+            {
+                cache.store(parsedState, plan, options.strategyName());
+            }
+            if (plan == null && cached != null)
+            {
+                System.err.println("No shorter solution found, replaying the cached one.");
+                plan = cached.plan;
+            }
         }
 
         // Print plan to server.
         if (plan == null)
         {
             System.err.println("Unable to solve level.");
-            System.exit(0);
+            return false;
         }
         else
         {
             System.err.format("Found solution of length %,d.\n", plan.length);
 
-            for (Action[] jointAction : plan)
+            // The responses of the server are read while the plan is sent, so it does not block on a full buffer.
+            long sendStart = System.nanoTime();
+            PlanSender sender = new PlanSender(serverMessages, out, options.sendWindow);
+            int failedStep;
+            try
             {
-                System.out.print(jointAction[0].name);
-                for (int action = 1; action < jointAction.length; ++action)
-                {
-                    System.out.print("|");
-                    System.out.print(jointAction[action].name);
-                }
-                System.out.println();
-                // We must read the server's response to not fill up the stdin buffer and block the server.
-                serverMessages.readLine();
+                failedStep = sender.send(plan);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return true;
+            }
+            if (failedStep != -1)
+            {
+                System.err.format("The server rejected joint action %,d (%s), stopped sending the plan.\n",
+                                  failedStep, sender.failedResponse());
+            }
+            else
+            {
+                System.err.format("Sent the plan in %.3f s.\n", (System.nanoTime() - sendStart) / 1_000_000_000d);
             }
         }
+        return true;
     }
 }
@@ -0,0 +1,116 @@
+package searchclient;
+
+/*
+    The limits and progress counters of one run of GraphSearch.
+
+    A search stops with TIMEOUT once it has run longer than timeLimit or is cancelled from another thread, and with
+    MEMORY once it stores more than maxStoredStates states, or once its memory governor has had to drop states. The
+    limits are checked every few hundred expansions, so a search may overrun them slightly.
+*/
+public class SearchContext
+{
+    public enum Outcome
+    {
+        SOLVED,
+        EXHAUSTED,
+        TIMEOUT,
+        MEMORY
+    }
+
+    private static final int CHECK_INTERVAL = 256;
+
+    // Nanoseconds the search may run, or 0 for no time limit.
+    public long timeLimit = 0;
+    // Maximum number of states in the frontier and the (exact) closed list together.
+    public long maxStoredStates = Long.MAX_VALUE;
+    // Only states reached by fewer actions are searched, to look for a plan shorter than a known one.
+    public int costBound = Integer.MAX_VALUE;
+    // Degrades the search when the heap fills up, or null to let it run out of memory.
+    public MemoryGovernor memoryGovernor = null;
+    // Saves the search to disk as it goes, and resumes it from there, or null.
+    public Checkpointer checkpointer = null;
+    // Print the periodic status lines to stderr.
+    public boolean verbose = true;
+    private volatile boolean cancelled = false;
+    // The search this one is part of, whose cancellation also stops this one, or null.
+    private SearchContext parent = null;
+
+    public long startTime;
+    public long endTime;
+    public long expanded;
+    public long generated;
+    public Outcome outcome;
+    public final SearchMetrics metrics = new SearchMetrics();
+
+    public void cancel()
+    {
+        this.cancelled = true;
+    }
+
+    // A context for a search that is part of this one, and is cancelled with it. Its limits are not inherited.
+    SearchContext child()
+    {
+        SearchContext child = new SearchContext();
+        child.parent = this;
+        return child;
+    }
+
+    boolean isCancelled()
+    {
+        return this.cancelled || (this.parent != null && this.parent.isCancelled());
+    }
+
+    void start()
+    {
+        this.startTime = System.nanoTime();
+        this.expanded = 0;
+        this.generated = 0;
+        this.outcome = null;
+        this.metrics.start(this);
+    }
+
+    void finish(Outcome outcome)
+    {
+        this.endTime = System.nanoTime();
+        this.outcome = outcome;
+    }
+
+    // Returns the reason to stop the search, or null if it may go on.
+    Outcome checkLimits(long storedStates)
+    {
+        if (this.expanded % CHECK_INTERVAL != 0)
+        {
+            return null;
+        }
+        if (this.isCancelled() || (this.timeLimit > 0 && System.nanoTime() - this.startTime > this.timeLimit))
+        {
+            return Outcome.TIMEOUT;
+        }
+        if (storedStates > this.maxStoredStates)
+        {
+            return Outcome.MEMORY;
+        }
+        return null;
+    }
+
+    // Seconds since the search started, or its total duration once it has finished.
+    public double elapsedSeconds()
+    {
+        long end = this.outcome == null ? System.nanoTime() : this.endTime;
+        return (end - this.startTime) / 1_000_000_000d;
+    }
+
+    // Rough heap footprint of one stored state of this level: the State, its two arrays, and a share of the
+    // frontier and closed list entries pointing at it.
+    public static long estimatedStateBytes(State state)
+    {
+        long agents = align(16 + 4L * state.agentCells.length);
+        long boxes = align(16 + 2L * state.boxes.length);
+        return 56 + agents + boxes + 64;
+    }
+
+    private static long align(long bytes)
+    {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,224 @@
+package searchclient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Keeps a warmed-up JVM waiting for levels, so that short levels are not solved by interpreted code while the JIT
+    catches up, and do not pay for starting the JVM and loading the classes.
+
+        java searchclient.SearchDaemon [-port <n>] [-warmup <s>] [levels]
+
+    The daemon first solves the levels given (files, directories or globs, as for the BatchRunner) with BFS, greedy
+    and A*, for at most -warmup seconds each (default 5), so that the hot paths are compiled. It then listens on the
+    loopback interface, port 14142 by default, and plays one level at a time with the server through DaemonClient,
+    which the server starts in place of SearchClient.
+
+    A connection starts with the search arguments of the client: their number and each as modified UTF-8. The rest
+    of what the client sends is the standard input of SearchClient. The daemon answers with frames of a channel byte
+    and a length, holding the standard output or the standard error of the search, and ends with an EXIT frame
+    carrying the exit status in place of the length. If the client goes away during the search, it is cancelled.
+*/
+public class SearchDaemon
+{
+    public static final int DEFAULT_PORT = 14142;
+
+    static final int EXIT = 0;
+    static final int STDOUT = 1;
+    static final int STDERR = 2;
+
+    public static void main(String[] args)
+    throws IOException
+    {
+        int port = DEFAULT_PORT;
+        double warmupSeconds = 5;
+        List<String> levelArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i)
+        {
+            switch (args[i])
+            {
+                case "-port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-warmup":
+                    warmupSeconds = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    levelArgs.add(args[i]);
+            }
+        }
+
+        warmUp(BatchRunner.findLevels(levelArgs), (long) (warmupSeconds * 1_000_000_000L));
+
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress()))
+        {
+            System.err.format("Search daemon listening on port %d.\n", port);
+            while (true)
+            {
+                Socket socket = server.accept();
+                serve(socket);
+                // Start every level with an empty heap, as a new JVM would.
+                System.gc();
+            }
+        }
+    }
+
+    // Solves each level with the usual strategies, to load the classes and compile the hot paths.
+    private static void warmUp(List<Path> levels, long timeLimit)
+    {
+        long start = System.nanoTime();
+        for (Path path : levels)
+        {
+            for (String strategy : new String[]{"-bfs", "-greedy", "-astar"})
+            {
+                try
+                {
+                    State initialState = LevelPreprocessor.preprocess(LevelParser.parse(path));
+                    SearchContext context = new SearchContext();
+                    context.verbose = false;
+                    context.timeLimit = timeLimit;
+                    Action[][] plan = SearchOptions.parse(new String[]{strategy}).search(initialState, context);
+                    if (plan != null)
+                    {
+                        PlanOptimizer.optimize(LevelParser.parse(path), plan);
+                    }
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    System.err.format("Warm-up on %s failed: %s\n", path, e);
+                }
+            }
+        }
+        if (!levels.isEmpty())
+        {
+            System.err.format("Warmed up on %d levels in %.3f s.\n", levels.size(),
+                              (System.nanoTime() - start) / 1_000_000_000d);
+        }
+    }
+
+    // Plays one level with the client on socket, with the standard error of the JVM sent to it meanwhile.
+    private static void serve(Socket socket)
+    {
+        PrintStream console = System.err;
+        try (socket)
+        {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            DataOutputStream frames = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(),
+                                                                                     1 << 16));
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; ++i)
+            {
+                args[i] = in.readUTF();
+            }
+
+            SearchContext context = new SearchContext();
+            PipedInputStream stdin = new PipedInputStream(1 << 16);
+            forward(in, new PipedOutputStream(stdin), context);
+            PrintStream stdout = new PrintStream(new BufferedOutputStream(new FrameOutputStream(frames, STDOUT),
+                                                                          1 << 16), true, "US-ASCII");
+            PrintStream stderr = new PrintStream(new BufferedOutputStream(new FrameOutputStream(frames, STDERR),
+                                                                          1 << 16), true, "US-ASCII");
+            System.setErr(stderr);
+            int status = 0;
+            try
+            {
+                SearchClient.run(args, stdin, stdout, context);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                e.printStackTrace();
+                status = 1;
+            }
+            finally
+            {
+                System.setErr(console);
+            }
+            stdout.flush();
+            stderr.flush();
+            synchronized (frames)
+            {
+                frames.writeByte(EXIT);
+                frames.writeInt(status);
+                frames.flush();
+            }
+        }
+        catch (IOException e)
+        {
+            console.format("Lost the connection to the client: %s\n", e);
+        }
+    }
+
+    // Copies what the client sends to the standard input of the search, and cancels the search if the client goes
+    // away, e.g. when the server stops it on a timeout.
+    private static void forward(InputStream in, PipedOutputStream stdin, SearchContext context)
+    {
+        Thread reader = new Thread(() -> {
+            byte[] buffer = new byte[1 << 16];
+            try (stdin)
+            {
+                int read;
+                while ((read = in.read(buffer)) != -1)
+                {
+                    stdin.write(buffer, 0, read);
+                    stdin.flush();
+                }
+            }
+            catch (IOException e)
+            {
+                // The connection or the search has ended.
+            }
+            context.cancel();
+        }, "daemon-stdin");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Sends everything written to it as frames of one channel. The frames of the channels share the socket.
+    private static class FrameOutputStream
+            extends OutputStream
+    {
+        private final DataOutputStream frames;
+        private final int channel;
+
+        FrameOutputStream(DataOutputStream frames, int channel)
+        {
+            this.frames = frames;
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b)
+        throws IOException
+        {
+            this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        throws IOException
+        {
+            synchronized (this.frames)
+            {
+                this.frames.writeByte(this.channel);
+                this.frames.writeInt(len);
+                this.frames.write(b, off, len);
+                this.frames.flush();
+            }
+        }
+    }
+}
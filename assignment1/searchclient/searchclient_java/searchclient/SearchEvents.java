@@ -0,0 +1,106 @@
+package searchclient;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+    JFR events of GraphSearch, to follow a search in JDK Mission Control next to GC and allocation events:
+        java -XX:StartFlightRecording=filename=search.jfr -cp . searchclient.SearchClient ...
+        jfr print --events searchclient.Search,searchclient.SearchSample search.jfr
+
+    Events are only filled in and committed if a running recording has them enabled (isEnabled, shouldCommit).
+    Loading the event classes starts JFR, which costs a noticeable fraction of a second at startup, so SearchMetrics
+    does not create events at all until JFR has been started, by -XX:StartFlightRecording or jcmd.
+*/
+final class SearchEvents
+{
+    private SearchEvents()
+    {
+    }
+
+    // False if no recording can be running, so no event could be enabled. Once JFR has been started, this stays true
+    // after its recordings stop; whether an event is recorded is then up to the event itself.
+    static boolean isAvailable()
+    {
+        return FlightRecorder.isInitialized();
+    }
+
+    static Object beginRun()
+    {
+        SearchRunEvent event = new SearchRunEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitRun(Object runEvent, SearchContext context)
+    {
+        SearchRunEvent event = (SearchRunEvent) runEvent;
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.outcome = String.valueOf(context.outcome);
+            event.expanded = context.expanded;
+            event.generated = context.generated;
+            event.commit();
+        }
+    }
+
+    static void commitSample(SearchContext context, SearchMetrics metrics, int frontierSize, long closedListSize,
+                             double expansionRate, double heapUsed)
+    {
+        SearchSampleEvent event = new SearchSampleEvent();
+        if (event.isEnabled())
+        {
+            event.expanded = context.expanded;
+            event.generated = context.generated;
+            event.duplicates = metrics.duplicates;
+            event.frontierSize = frontierSize;
+            event.closedListSize = closedListSize;
+            event.expansionRate = expansionRate;
+            event.heapUsed = heapUsed;
+            event.commit();
+        }
+    }
+
+    @Name("searchclient.SearchSample")
+    @Label("Search Sample")
+    @Category("Search Client")
+    @Description("Progress of a running search, recorded about every 64 expansions")
+    static class SearchSampleEvent
+    extends Event
+    {
+        @Label("Expanded")
+        long expanded;
+        @Label("Generated")
+        long generated;
+        @Label("Duplicates")
+        long duplicates;
+        @Label("Frontier Size")
+        int frontierSize;
+        @Label("Closed List Size")
+        long closedListSize;
+        @Label("Expansions per Second")
+        double expansionRate;
+        @Label("Heap Used (MB)")
+        double heapUsed;
+    }
+
+    @Name("searchclient.Search")
+    @Label("Search")
+    @Category("Search Client")
+    @Description("A whole run of GraphSearch")
+    static class SearchRunEvent
+    extends Event
+    {
+        @Label("Outcome")
+        String outcome;
+        @Label("Expanded")
+        long expanded;
+        @Label("Generated")
+        long generated;
+    }
+}
@@ -0,0 +1,268 @@
+package searchclient;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/*
+    Metrics of one run of GraphSearch, cheap enough to be always on.
+
+    Counters are updated on every iteration. Everything else is sampled on one iteration in SAMPLE_INTERVAL on
+    average, at random gaps so that periodic costs such as rehashing the closed list at power-of-two sizes are not
+    always or never sampled. The sampled iteration is timed phase by phase, and records the frontier size and the
+    f-value of the expanded state. The heap use and the expansion rate are sampled at most every RATE_SPACING.
+    The phase times are scaled up to estimates for the whole search:
+        successors  State.getExpandedStates
+        duplicates  closed list and frontier lookups, i.e. hashing and equality checks
+        frontier    adding and popping
+        heuristic   evaluating the new children of an expansion together, before they are added to the frontier
+    If a JFR recording has it enabled, the sampled iteration also commits a SearchSample event (see SearchEvents).
+    Every exportPeriod a JSON line is written to the export stream if there is one. Histograms have power-of-two
+    buckets: bucket 0 counts 0, and bucket i counts values in [2^(i-1), 2^i).
+*/
+public class SearchMetrics
+{
+    public static final int SUCCESSORS = 0;
+    public static final int DUPLICATES = 1;
+    public static final int FRONTIER = 2;
+    public static final int HEURISTIC = 3;
+    private static final String[] PHASE_NAMES = {"successors", "duplicates", "frontier", "heuristic"};
+
+    private static final int SAMPLE_INTERVAL = 64;
+    // The expansion rate is measured over the last RATE_SLOTS samples taken at least RATE_SPACING apart.
+    private static final int RATE_SLOTS = 10;
+    private static final long RATE_SPACING = 100_000_000L;
+
+    public long duplicates = 0;
+    // States dropped without being expanded, for instance to free memory.
+    public long pruned = 0;
+
+    private final long[] phaseNanos = new long[PHASE_NAMES.length];
+    private long timedIterations = 0;
+    private boolean timing = false;
+    private long lapStart;
+    private int untilSample = 1;
+    private int randomBits = 1;
+
+    private final long[] frontierSizes = new long[64];
+    private final long[] fValues = new long[64];
+    private double heapUsed = 0;
+    private double peakHeap = 0;
+
+    private final long[] rateTimes = new long[RATE_SLOTS];
+    private final long[] rateExpanded = new long[RATE_SLOTS];
+    private int rateSlot = 0;
+    private int rateCount = 0;
+
+    private PrintStream export = null;
+    private String label = null;
+    private long exportPeriod = 1_000_000_000L;
+    private long lastExport;
+
+    private SearchContext context;
+    // The JFR event of the whole search, committed when it finishes if it is enabled, or null if JFR was not
+    // started when the search began.
+    private Object runEvent;
+
+    // Writes a JSON line to out every periodMillis, and one when the search ends. The label, if any, is included in
+    // every line, so several searches can share a stream.
+    public void exportTo(PrintStream out, String label, long periodMillis)
+    {
+        this.export = out;
+        this.label = label;
+        this.exportPeriod = periodMillis * 1_000_000L;
+    }
+
+    void start(SearchContext context)
+    {
+        this.context = context;
+        this.duplicates = 0;
+        this.pruned = 0;
+        Arrays.fill(this.phaseNanos, 0);
+        this.timedIterations = 0;
+        this.untilSample = 1;
+        Arrays.fill(this.frontierSizes, 0);
+        Arrays.fill(this.fValues, 0);
+        this.peakHeap = 0;
+        this.rateSlot = 0;
+        this.rateCount = 0;
+        this.lastExport = context.startTime;
+        this.runEvent = SearchEvents.isAvailable() ? SearchEvents.beginRun() : null;
+    }
+
+    void finish(ClosedList explored, Frontier frontier)
+    {
+        this.heapUsed = Memory.used();
+        this.peakHeap = Math.max(this.peakHeap, this.heapUsed);
+        this.sample(explored, frontier, System.nanoTime());
+        if (this.export != null)
+        {
+            this.writeLine(explored, frontier);
+        }
+        if (this.runEvent != null)
+        {
+            SearchEvents.commitRun(this.runEvent, this.context);
+        }
+    }
+
+    // Starts an iteration of the search loop, which is timed if it is a sampled one.
+    void startIteration()
+    {
+        this.timing = --this.untilSample == 0;
+        if (this.timing)
+        {
+            // Xorshift, for a gap uniform in [1, 2 * SAMPLE_INTERVAL - 1].
+            this.randomBits ^= this.randomBits << 13;
+            this.randomBits ^= this.randomBits >>> 17;
+            this.randomBits ^= this.randomBits << 5;
+            this.untilSample = 1 + (this.randomBits >>> 1) % (2 * SAMPLE_INTERVAL - 1);
+            ++this.timedIterations;
+            this.lapStart = System.nanoTime();
+        }
+    }
+
+    // Adds the time since the previous lap to phase, on timed iterations.
+    void lap(int phase)
+    {
+        if (this.timing)
+        {
+            long now = System.nanoTime();
+            this.phaseNanos[phase] += now - this.lapStart;
+            this.lapStart = now;
+        }
+    }
+
+    // On timed iterations, records the f-value of the expanded state.
+    void sampleF(Frontier frontier, State expanded)
+    {
+        if (this.timing)
+        {
+            ++this.fValues[bucket(frontier.f(expanded))];
+        }
+    }
+
+    // Ends a timed iteration by taking the periodic samples.
+    void endIteration(ClosedList explored, Frontier frontier)
+    {
+        if (this.timing)
+        {
+            this.timing = false;
+            long now = System.nanoTime();
+            this.sample(explored, frontier, now);
+            if (this.export != null && now - this.lastExport >= this.exportPeriod)
+            {
+                this.lastExport = now;
+                this.writeLine(explored, frontier);
+            }
+        }
+    }
+
+    private void sample(ClosedList explored, Frontier frontier, long now)
+    {
+        ++this.frontierSizes[bucket(frontier.size())];
+
+        // Reading the heap use can take close to a millisecond, so it is sampled with the rate, at most every
+        // RATE_SPACING.
+        int previous = (this.rateSlot + RATE_SLOTS - 1) % RATE_SLOTS;
+        if (this.rateCount == 0 || now - this.rateTimes[previous] >= RATE_SPACING)
+        {
+            this.heapUsed = Memory.used();
+            this.peakHeap = Math.max(this.peakHeap, this.heapUsed);
+            this.rateTimes[this.rateSlot] = now;
+            this.rateExpanded[this.rateSlot] = this.context.expanded;
+            this.rateSlot = (this.rateSlot + 1) % RATE_SLOTS;
+            this.rateCount = Math.min(this.rateCount + 1, RATE_SLOTS);
+        }
+
+        if (SearchEvents.isAvailable())
+        {
+            SearchEvents.commitSample(this.context, this, frontier.size(), explored.size(), this.expansionRate(now),
+                                      this.heapUsed);
+        }
+    }
+
+    // Expansions per second over the sliding window, or since the start while the window is filling.
+    public double expansionRate(long now)
+    {
+        long time;
+        long expanded;
+        if (this.rateCount < RATE_SLOTS)
+        {
+            time = this.context.startTime;
+            expanded = 0;
+        }
+        else
+        {
+            time = this.rateTimes[this.rateSlot];
+            expanded = this.rateExpanded[this.rateSlot];
+        }
+        return now > time ? (this.context.expanded - expanded) * 1_000_000_000d / (now - time) : 0;
+    }
+
+    // Estimated total seconds spent in the phase, extrapolated from the timed iterations.
+    public double phaseSeconds(int phase)
+    {
+        if (this.timedIterations == 0)
+        {
+            return 0;
+        }
+        return this.phaseNanos[phase] / 1_000_000_000d * this.context.expanded / this.timedIterations;
+    }
+
+    public double peakHeap()
+    {
+        return this.peakHeap;
+    }
+
+    private static int bucket(long value)
+    {
+        return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    private void writeLine(ClosedList explored, Frontier frontier)
+    {
+        SearchContext context = this.context;
+        StringBuilder line = new StringBuilder(512);
+        line.append('{');
+        if (this.label != null)
+        {
+            line.append("\"label\": \"").append(this.label).append("\", ");
+        }
+        line.append(String.format(Locale.ROOT, "\"time_s\": %.3f, \"outcome\": %s, \"expanded\": %d, " +
+                                               "\"generated\": %d, \"duplicates\": %d, \"pruned\": %d, " +
+                                               "\"frontier\": %d, \"closed\": %d, \"expanded_per_s\": %.0f, " +
+                                               "\"heap_mb\": %.1f, \"peak_heap_mb\": %.1f",
+                                  context.elapsedSeconds(),
+                                  context.outcome == null ? "null" : "\"" + context.outcome + "\"",
+                                  context.expanded, context.generated, this.duplicates, this.pruned,
+                                  frontier.size(), explored.size(), this.expansionRate(System.nanoTime()),
+                                  this.heapUsed, this.peakHeap));
+        line.append(", \"phase_s\": {");
+        for (int phase = 0; phase < PHASE_NAMES.length; ++phase)
+        {
+            line.append(phase == 0 ? "" : ", ").append('"').append(PHASE_NAMES[phase]).append("\": ")
+                .append(String.format(Locale.ROOT, "%.3f", this.phaseSeconds(phase)));
+        }
+        line.append("}, \"frontier_histogram\": ");
+        appendHistogram(line, this.frontierSizes);
+        line.append(", \"f_histogram\": ");
+        appendHistogram(line, this.fValues);
+        line.append('}');
+        this.export.println(line);
+    }
+
+    private static void appendHistogram(StringBuilder line, long[] buckets)
+    {
+        int last = buckets.length - 1;
+        while (last > 0 && buckets[last] == 0)
+        {
+            --last;
+        }
+        line.append('[');
+        for (int i = 0; i <= last; ++i)
+        {
+            line.append(i == 0 ? "" : ", ").append(buckets[i]);
+        }
+        line.append(']');
+    }
+}
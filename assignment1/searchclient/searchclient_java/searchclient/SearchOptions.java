@@ -0,0 +1,465 @@
+package searchclient;
+
+import java.nio.file.Paths;
+import java.util.Locale;
+
+import searchclient.Heuristic.*;
+
+/*
+    The search strategy and options selected by command line arguments.
+
+    The options are parsed once, and can then create a fresh frontier and closed list for any number of levels.
+*/
+public class SearchOptions
+{
+    // One of bfs, dfs, astar, wastar, greedy and idastar, or null if no strategy was given.
+    public String strategy = null;
+    public int weight = 5;
+    // Size of the transposition table of IDA*: 0 for a quarter of the heap.
+    public long tableBytes = 0;
+    // Search single-agent levels by pushes and pulls, see Level.pushMacros.
+    public boolean pushes = false;
+    // Solve one goal at a time, see SubgoalSearch.
+    public boolean subgoals = false;
+    // Use the relaxed-plan heuristic in the best-first strategies, see RelaxedPlan.
+    public boolean relaxedPlan = false;
+    // Use the landmark-counting heuristic in the best-first strategies, see Landmarks.
+    public boolean landmarks = false;
+    // Use the sum of goal distances in the best-first strategies, see GoalDistances.
+    public boolean goalDistances = false;
+    // Prune the interleavings of independent agents, see State.removeDelayableActions.
+    public boolean canonical = false;
+    // Size of the bit-state closed list: -1 for an exact closed list, 0 for a quarter of the heap.
+    public long bitStateBytes = -1;
+    // Size of the sort buffer of the external-memory search: -1 to search in memory, 0 for an eighth of the heap.
+    public long externalBytes = -1;
+    // Number of joint actions sent to the server ahead of its responses, see PlanSender.
+    public int sendWindow = PlanSender.DEFAULT_WINDOW;
+    // File to export the search metrics to as JSON lines, or null. See SearchMetrics.
+    public String metricsFile = null;
+    // Percentage of the old generation that live states may fill before the search is degraded, or 0 to let the
+    // search run out of memory. See MemoryGovernor.
+    public int heapLimit = 80;
+    // File to checkpoint the search to and resume it from, or null, and the seconds between checkpoints.
+    // See Checkpointer.
+    public String checkpointFile = null;
+    public long checkpointInterval = 60;
+    // Directory of the solution cache, or null to always search. See SolutionCache.
+    public String cacheDirectory = null;
+
+    public static SearchOptions parse(String[] args)
+    {
+        SearchOptions options = new SearchOptions();
+        for (int i = 0; i < args.length; ++i)
+        {
+            switch (args[i].toLowerCase(Locale.ROOT))
+            {
+                case "-bfs":
+                    options.strategy = "bfs";
+                    break;
+                case "-dfs":
+                    options.strategy = "dfs";
+                    break;
+                case "-astar":
+                    options.strategy = "astar";
+                    break;
+                case "-wastar":
+                    options.strategy = "wastar";
+                    if (hasValue(args, i))
+                    {
+                        try
+                        {
+                            options.weight = Integer.parseUnsignedInt(args[++i]);
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            System.err.println("Couldn't parse weight argument to -wastar as integer, using default.");
+                        }
+                    }
+                    break;
+                case "-greedy":
+                    options.strategy = "greedy";
+                    break;
+                case "-idastar":
+                    // The transposition table takes a quarter of the heap unless a size in MB is given.
+                    options.strategy = "idastar";
+                    if (hasValue(args, i))
+                    {
+                        try
+                        {
+                            options.tableBytes = Long.parseUnsignedLong(args[++i]) * 1024 * 1024;
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            System.err.println("Couldn't parse size argument to -idastar as integer, using default.");
+                        }
+                    }
+                    break;
+                case "-pushes":
+                    options.pushes = true;
+                    break;
+                case "-subgoals":
+                    options.subgoals = true;
+                    break;
+                case "-relaxed":
+                    options.relaxedPlan = true;
+                    break;
+                case "-landmarks":
+                    options.landmarks = true;
+                    break;
+                case "-distances":
+                    options.goalDistances = true;
+                    break;
+                case "-canonical":
+                    options.canonical = true;
+                    break;
+                case "-bitstate":
+                    // Bit-state hashing uses a quarter of the heap unless a size in MB is given.
+                    options.bitStateBytes = 0;
+                    if (hasValue(args, i))
+                    {
+                        try
+                        {
+                            options.bitStateBytes = Long.parseUnsignedLong(args[++i]) * 1024 * 1024;
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            System.err.println("Couldn't parse size argument to -bitstate as integer, using default.");
+                        }
+                    }
+                    break;
+                case "-external":
+                    // The external-memory search sorts in an eighth of the heap unless a size in MB is given.
+                    options.externalBytes = 0;
+                    if (hasValue(args, i))
+                    {
+                        try
+                        {
+                            options.externalBytes = Long.parseUnsignedLong(args[++i]) * 1024 * 1024;
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            System.err.println("Couldn't parse size argument to -external as integer, using default.");
+                        }
+                    }
+                    break;
+                case "-window":
+                    if (hasValue(args, i))
+                    {
+                        try
+                        {
+                            options.sendWindow = Integer.parseUnsignedInt(args[++i]);
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            System.err.println("Couldn't parse size argument to -window as integer, using default.");
+                        }
+                    }
+                    break;
+                case "-heaplimit":
+                    if (hasValue(args, i))
+                    {
+                        try
+                        {
+                            options.heapLimit = Math.min(100, Integer.parseUnsignedInt(args[++i]));
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            System.err.println("Couldn't parse percentage argument to -heaplimit as integer, " +
+                                               "using default.");
+                        }
+                    }
+                    break;
+                case "-metrics":
+                    if (hasValue(args, i))
+                    {
+                        options.metricsFile = args[++i];
+                    }
+                    else
+                    {
+                        System.err.println("Missing file argument to -metrics, not exporting metrics.");
+                    }
+                    break;
+                case "-checkpoint":
+                    if (hasValue(args, i))
+                    {
+                        options.checkpointFile = args[++i];
+                    }
+                    else
+                    {
+                        System.err.println("Missing file argument to -checkpoint, not checkpointing.");
+                    }
+                    break;
+                case "-cache":
+                    // The cache is kept in the home directory unless a directory is given.
+                    options.cacheDirectory = Paths.get(System.getProperty("user.home"), ".searchclient",
+                                                       "solutions").toString();
+                    if (hasValue(args, i))
+                    {
+                        options.cacheDirectory = args[++i];
+                    }
+                    break;
+                case "-checkpointinterval":
+                    if (hasValue(args, i))
+                    {
+                        try
+                        {
+                            options.checkpointInterval = Math.max(1, Long.parseUnsignedLong(args[++i]));
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            System.err.println("Couldn't parse seconds argument to -checkpointinterval as integer, " +
+                                               "using default.");
+                        }
+                    }
+                    break;
+                default:
+                    System.err.format("Ignoring unknown argument %s.\n", args[i]);
+            }
+        }
+        if (options.externalBytes >= 0 && options.strategy != null && !options.strategy.equals("bfs"))
+        {
+            System.err.format("The external-memory search is breadth-first, ignoring -%s.\n", options.strategy);
+            options.strategy = "bfs";
+        }
+        if (options.isIterativeDeepening() && (options.bitStateBytes >= 0 || options.checkpointFile != null ||
+                                                options.metricsFile != null || options.pushes ||
+                                                options.relaxedPlan || options.landmarks || options.goalDistances ||
+                                                options.canonical))
+        {
+            // Its memory is the transposition table, and it has no frontier or closed list to save or sample.
+            System.err.println("IDA* ignores -bitstate, -checkpoint, -metrics, -pushes, -relaxed, -landmarks, " +
+                               "-distances and -canonical.");
+            options.bitStateBytes = -1;
+            options.checkpointFile = null;
+            options.metricsFile = null;
+            options.pushes = false;
+            options.relaxedPlan = false;
+            options.landmarks = false;
+            options.goalDistances = false;
+            options.canonical = false;
+        }
+        if ((options.relaxedPlan || options.landmarks || options.goalDistances) && !options.isBestFirst())
+        {
+            System.err.println("The relaxed-plan, landmark and goal distance heuristics need -astar, -wastar or " +
+                               "-greedy, ignoring -relaxed, -landmarks and -distances.");
+            options.relaxedPlan = false;
+            options.landmarks = false;
+            options.goalDistances = false;
+        }
+        if (options.relaxedPlan && options.landmarks)
+        {
+            System.err.println("Only one heuristic can be used at a time, ignoring -landmarks.");
+            options.landmarks = false;
+        }
+        if ((options.relaxedPlan || options.landmarks) && options.goalDistances)
+        {
+            System.err.println("Only one heuristic can be used at a time, ignoring -distances.");
+            options.goalDistances = false;
+        }
+        if (options.subgoals && (options.checkpointFile != null || options.metricsFile != null))
+        {
+            // Each goal is a search of its own, on a level of its own.
+            System.err.println("The search by subgoals ignores -checkpoint and -metrics.");
+            options.checkpointFile = null;
+            options.metricsFile = null;
+        }
+        if (options.externalBytes >= 0 && options.pushes)
+        {
+            // Its plans are rebuilt from the actions of the layers, which leave out the walks.
+            System.err.println("The external-memory search does not search by pushes, ignoring -pushes.");
+            options.pushes = false;
+        }
+        if (options.canonical && options.checkpointFile != null && !options.keepsShortestPaths())
+        {
+            // The second search would resume the checkpoint of the first, whose closed list was built with it.
+            System.err.println("-canonical can only be checkpointed with -bfs, ignoring -canonical.");
+            options.canonical = false;
+        }
+        if (options.externalBytes >= 0 && options.canonical)
+        {
+            // Its layers keep no actions to prune by, and the plan is rebuilt by expanding the states on it again.
+            System.err.println("The external-memory search does not prune interleavings, ignoring -canonical.");
+            options.canonical = false;
+        }
+        return options;
+    }
+
+    // True if the option at args[i] is followed by its value rather than by another option or a level. Most
+    // values are numbers. Used by parse and by the BatchRunner, which passes the search options on.
+    static boolean hasValue(String[] args, int i)
+    {
+        if (i + 1 >= args.length)
+        {
+            return false;
+        }
+        String value = args[i + 1];
+        switch (args[i].toLowerCase(Locale.ROOT))
+        {
+            case "-wastar":
+            case "-idastar":
+            case "-bitstate":
+            case "-external":
+            case "-window":
+            case "-heaplimit":
+            case "-checkpointinterval":
+                return value.matches("\\d+");
+            case "-metrics":
+            case "-checkpoint":
+            case "-cache":
+                return !value.startsWith("-");
+            default:
+                return false;
+        }
+    }
+
+    // True if the strategy orders its frontier by a heuristic.
+    public boolean isBestFirst()
+    {
+        return "astar".equals(this.strategy) || "wastar".equals(this.strategy) || "greedy".equals(this.strategy);
+    }
+
+    // True if states are expanded in order of their shortest distance, as the reduction of -canonical needs to keep
+    // a shortest path to every state. Other strategies may keep a path that it cuts off, and so search again
+    // without it when they find no plan. A* only would with a consistent heuristic, which ours are not.
+    boolean keepsShortestPaths()
+    {
+        return this.strategy == null || "bfs".equals(this.strategy);
+    }
+
+    // True if the search is IDA* rather than a GraphSearch with a frontier and closed list.
+    public boolean isIterativeDeepening()
+    {
+        return "idastar".equals(this.strategy);
+    }
+
+    // Searches initialState with the strategy and options, within the limits of context.
+    public Action[][] search(State initialState, SearchContext context)
+    {
+        if (this.subgoals)
+        {
+            return SubgoalSearch.search(initialState, this, context);
+        }
+        return this.searchAtOnce(initialState, context);
+    }
+
+    // Searches initialState for all of its goals at once.
+    Action[][] searchAtOnce(State initialState, SearchContext context)
+    {
+        if (this.isIterativeDeepening())
+        {
+            long tableBytes = this.tableBytes > 0 ? this.tableBytes : (long) (Memory.max() * 0.25 * 1024 * 1024);
+            return IDAStarSearch.search(initialState, context, tableBytes);
+        }
+        if (this.pushes && initialState.agentCells.length == 1)
+        {
+            initialState.level.pushMacros = true;
+        }
+        else if (this.pushes)
+        {
+            System.err.println("Searching by pushes needs a single agent, ignoring -pushes.");
+        }
+        // A tunnel walk is one child costing several steps. -bfs and -dfs count it as one step, and A* would need to
+        // lower the g of a frontier state reached again more cheaply, which GraphSearch does not, so only -greedy and
+        // -wastar use them. The external-memory search also relies on every step being undone by one step, which
+        // tunnel walks are not.
+        boolean tunnels = ("greedy".equals(this.strategy) || "wastar".equals(this.strategy)) &&
+                          this.externalBytes < 0 && initialState.agentCells.length == 1;
+        initialState.level.tunnels = tunnels ? LevelPreprocessor.findTunnels(initialState.level) : null;
+        initialState.level.canonicalOrder = this.canonical && initialState.agentCells.length > 1;
+        Action[][] plan = this.searchGraph(initialState, context);
+        if (plan == null && initialState.level.canonicalOrder && !this.keepsShortestPaths() &&
+            context.outcome == SearchContext.Outcome.EXHAUSTED)
+        {
+            System.err.println("No plan found with -canonical, searching again without it.");
+            initialState.level.canonicalOrder = false;
+            plan = this.searchGraph(initialState, context);
+        }
+        return plan;
+    }
+
+    private Action[][] searchGraph(State initialState, SearchContext context)
+    {
+        Frontier frontier = this.createFrontier(initialState);
+        ClosedList explored = this.createClosedList();
+        if (context.verbose)
+        {
+            System.err.format("Starting %s with a %s closed list.\n", frontier.getName(), explored.getName());
+        }
+        return GraphSearch.search(initialState, frontier, explored, context);
+    }
+
+    // The strategy as recorded in the solution cache, with the weight of weighted A*.
+    public String strategyName()
+    {
+        String strategy = this.strategy == null ? "bfs" : this.strategy;
+        strategy = strategy.equals("wastar") ? strategy + this.weight : strategy;
+        strategy = this.pushes ? strategy + "-pushes" : strategy;
+        strategy = this.relaxedPlan ? strategy + "-relaxed" : strategy;
+        strategy = this.landmarks ? strategy + "-landmarks" : strategy;
+        strategy = this.goalDistances ? strategy + "-distances" : strategy;
+        strategy = this.canonical ? strategy + "-canonical" : strategy;
+        return this.subgoals ? strategy + "-subgoals" : strategy;
+    }
+
+    // Creates the frontier of the selected strategy, defaulting to BFS.
+    public Frontier createFrontier(State initialState)
+    {
+        if (this.externalBytes == 0)
+        {
+            return FrontierExternal.ofHeapFraction(initialState, 0.125);
+        }
+        if (this.externalBytes > 0)
+        {
+            return new FrontierExternal(initialState, this.externalBytes);
+        }
+        Heuristic heuristic;
+        switch (this.strategy == null ? "bfs" : this.strategy)
+        {
+            case "dfs":
+                return new FrontierDFS();
+            case "astar":
+                heuristic = new HeuristicAStar(initialState);
+                break;
+            case "wastar":
+                heuristic = new HeuristicWeightedAStar(initialState, this.weight);
+                break;
+            case "greedy":
+                heuristic = new HeuristicGreedy(initialState);
+                break;
+            default:
+                return new FrontierBFS();
+        }
+        if (this.relaxedPlan)
+        {
+            heuristic.relaxedPlan = new RelaxedPlan(initialState);
+        }
+        if (this.landmarks)
+        {
+            // A* keeps its plans shortest with the admissible variant.
+            heuristic.landmarks = new Landmarks(initialState, "astar".equals(this.strategy));
+        }
+        if (this.goalDistances)
+        {
+            heuristic.goalDistances = new GoalDistances(initialState);
+        }
+        return new FrontierBestFirst(heuristic);
+    }
+
+    public ClosedList createClosedList()
+    {
+        if (this.externalBytes >= 0)
+        {
+            return new ClosedListDelayed();
+        }
+        if (this.bitStateBytes < 0)
+        {
+            return new ClosedListHash();
+        }
+        if (this.bitStateBytes == 0)
+        {
+            return ClosedListBitState.ofHeapFraction(0.25);
+        }
+        return new ClosedListBitState(this.bitStateBytes);
+    }
+}
@@ -0,0 +1,165 @@
+package searchclient;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+    Keeps the shortest known plan of each level on disk, to replay it instead of searching again.
+
+    A level is keyed by a 64-bit hash of its walls, goals, colors, agents and boxes as parsed, so a plan is found again
+    for the same level under any file name, and not for a variant with other colors or another start. Each level has
+    a file <key>.plan in the cache directory: a line "#strategies" with the strategies that have searched the level,
+    then the plan, one joint action per line as sent to the server, so that PlanSimulator can check it. Plans are
+    checked by the PlanSimulator when they are stored and when they are read, so a hash collision or an edited file
+    never sends a wrong plan; a plan that does not solve the level is ignored.
+
+    A strategy that has not searched the level yet searches it with the length of the cached plan as a bound, and
+    only finds plans shorter than it; see SearchClient.
+*/
+public class SolutionCache
+{
+    private static final String STRATEGIES = "#strategies";
+
+    private final Path directory;
+
+    // A cached plan, and the strategies that have searched its level.
+    public static class Entry
+    {
+        public final Action[][] plan;
+        public final Set<String> strategies;
+
+        Entry(Action[][] plan, Set<String> strategies)
+        {
+            this.plan = plan;
+            this.strategies = strategies;
+        }
+    }
+
+    public SolutionCache(Path directory)
+    {
+        this.directory = directory;
+    }
+
+    // The cached plan of the level of initialState, or null if there is none or it does not solve the level.
+    public Entry lookup(State initialState)
+    {
+        Path file = this.file(initialState);
+        List<String> lines;
+        try
+        {
+            lines = Files.readAllLines(file, StandardCharsets.US_ASCII);
+        }
+        catch (NoSuchFileException e)
+        {
+            return null;
+        }
+        catch (IOException e)
+        {
+            System.err.format("Could not read cached solution %s (%s).\n", file, e);
+            return null;
+        }
+        Set<String> strategies = new TreeSet<>();
+        List<Action[]> plan = new ArrayList<>();
+        for (String line : lines)
+        {
+            if (line.startsWith(STRATEGIES))
+            {
+                strategies.addAll(Arrays.asList(line.substring(STRATEGIES.length()).strip().split("\\s+")));
+            }
+            else if (!line.isBlank() && !line.startsWith("#"))
+            {
+                plan.add(PlanSimulator.parseJointAction(line));
+            }
+        }
+        Action[][] actions = plan.toArray(new Action[0][]);
+        PlanSimulator.Result result = PlanSimulator.simulate(initialState, actions);
+        if (!result.isSolution())
+        {
+            System.err.format("Ignoring cached solution %s: %s\n", file, result);
+            return null;
+        }
+        return new Entry(actions, strategies);
+    }
+
+    // Stores plan if it solves the level and is shorter than the cached plan, and records that strategy has searched
+    // the level.
+    public void store(State initialState, Action[][] plan, String strategy)
+    {
+        Entry cached = this.lookup(initialState);
+        Set<String> strategies = cached == null ? new TreeSet<>() : cached.strategies;
+        strategies.add(strategy);
+        if (plan == null || !PlanSimulator.simulate(initialState, plan).isSolution() ||
+            (cached != null && cached.plan.length <= plan.length))
+        {
+            if (cached == null)
+            {
+                return;
+            }
+            plan = cached.plan;
+        }
+
+        // Written to a temporary file first, so that concurrent clients never read half a plan.
+        Path file = this.file(initialState);
+        try
+        {
+            Files.createDirectories(this.directory);
+            Path temporary = Files.createTempFile(this.directory, file.getFileName().toString(), ".tmp");
+            try (BufferedWriter out = Files.newBufferedWriter(temporary, StandardCharsets.US_ASCII))
+            {
+                out.write(STRATEGIES + " " + String.join(" ", strategies));
+                out.newLine();
+                for (Action[] jointAction : plan)
+                {
+                    for (int agent = 0; agent < jointAction.length; ++agent)
+                    {
+                        if (agent > 0)
+                        {
+                            out.write('|');
+                        }
+                        out.write(jointAction[agent].name);
+                    }
+                    out.newLine();
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            System.err.format("Could not cache the solution in %s (%s).\n", file, e);
+        }
+    }
+
+    private Path file(State initialState)
+    {
+        return this.directory.resolve(String.format("%016x.plan", key(initialState)));
+    }
+
+    // A hash of the level and of the agents and boxes of its initial state.
+    static long key(State initialState)
+    {
+        long h = initialState.level.fingerprint();
+        for (int cell : initialState.agentCells)
+        {
+            h = (h ^ cell) * 0xBF58476D1CE4E5B9L;
+        }
+        char[] boxes = initialState.boxes;
+        for (int cell = 0; cell < boxes.length; ++cell)
+        {
+            if (boxes[cell] != 0)
+            {
+                h = (h ^ ((long) cell << 8 | boxes[cell])) * 0x94D049BB133111EBL;
+            }
+        }
+        return h ^ h >>> 31;
+    }
+}
@@ -3,103 +3,222 @@ package searchclient;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Random;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 public class State
 {
-    private static final Random RNG = new Random(1);
+    private static final Action[] ACTIONS = Action.values();
+    private static final int MAX_AGENTS = 10;
+    // Expansions with at least this many joint actions are generated in parallel, if there is more than one core.
+    static final int PARALLEL_THRESHOLD = 4096;
+    private static final int PARALLELISM = ForkJoinPool.getCommonPoolParallelism();
 
-    /*
-        The agent rows, columns, and colors are indexed by the agent number.
-        For example, this.agentRows[0] is the row location of agent '0'.
-    */
-    public int[] agentRows;
-    public int[] agentCols;
-    public static Color[] agentColors;
+    // Buffers reused by every expansion on the same thread, so the hot path does not allocate.
+    private static final class Scratch
+    {
+        final int[] applicableActions = new int[MAX_AGENTS];
+        final int[] actionsPermutation = new int[MAX_AGENTS];
+        final int[] destinationCells = new int[MAX_AGENTS];
+        final int[] boxCells = new int[MAX_AGENTS];
+        final int[] boxSources = new int[MAX_AGENTS];
+        // The cells changed by the joint action that produced the state being expanded, and by one agent's action.
+        final int[] parentCells = new int[4 * MAX_AGENTS];
+        final int[] actionCells = new int[4];
+        // One joint action buffer per number of agents, so its length always matches the level.
+        final Action[][] jointActions = new Action[MAX_AGENTS + 1][];
+        // Breadth-first walks of push-level states: the cells reached in order and their distances, for the region
+        // of the state being expanded and for the canonical cells of its children, and the walk that last reached
+        // each cell, so that the arrays need not be cleared between walks.
+        int[] regionCells = new int[0];
+        int[] regionDistances = new int[0];
+        int[] childCells = new int[0];
+        int[] childDistances = new int[0];
+        int[] reachedBy = new int[0];
+        int walk = 0;
+
+        Scratch()
+        {
+            for (int numAgents = 0; numAgents <= MAX_AGENTS; ++numAgents)
+            {
+                this.jointActions[numAgents] = new Action[numAgents];
+            }
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    // The walls, goals and colors of the level, shared by all states. See Level for the cell layout.
+    public final Level level;
 
     /*
-        The walls, boxes, and goals arrays are indexed from the top-left of the level, row-major order (row, col).
-               Col 0  Col 1  Col 2  Col 3
-        Row 0: (0,0)  (0,1)  (0,2)  (0,3)  ...
-        Row 1: (1,0)  (1,1)  (1,2)  (1,3)  ...
-        Row 2: (2,0)  (2,1)  (2,2)  (2,3)  ...
-        ...
-
-        For example, this.walls[2] is an array of booleans for the third row.
-        this.walls[row][col] is true if there's a wall at (row, col).
+        The agent cells are indexed by the agent number.
+        For example, this.agentCells[0] is the cell of agent '0'.
     */
-    public static boolean[][] walls;
-    public char[][] boxes;
-    public static char[][] goals;
-    public static char[][] passableGoals;
+    public int[] agentCells;
 
     /*
-        The box colors are indexed alphabetically. So this.boxColors[0] is the color of A boxes, 
-        this.boxColor[1] is the color of B boxes, etc.
+        The boxes array is indexed by cell, like the arrays of Level.
+        this.boxes[cell] is the letter of the box at cell, or 0 if there is none.
     */
-    public static Color[] boxColors;
- 
+    public char[] boxes;
+
     public final State parent;
-    public final Action[] jointAction;
+    // Interned joint action that produced this state, see JointAction. -1 for the initial state.
+    public final int jointActionCode;
     private final int g;
     private int pp;
     private int movePenalties;
 
     private int hash = 0;
 
-    public int f_score;
+    // The key a best-first frontier orders this state by, its f, or NO_KEY until it is computed.
+    public static final int NO_KEY = Integer.MIN_VALUE;
+    public int f_score = NO_KEY;
+    // The heuristic value of this state, cached by heuristics that are costly to compute, or -1. Helpful if the
+    // action that produced it is among the helpful actions of its parent, see RelaxedPlan.
+    int h = -1;
+    boolean helpful = false;
+    // The accepted and true landmarks of this state and their count, see Landmarks. Null until it is evaluated.
+    long[] landmarks = null;
+
+    // Index of this state in the log of expanded states of a Checkpointer, or -1 until it is logged.
+    int checkpointIndex = -1;
 
 
     // Constructs an initial state.
     // Arguments are not copied, and therefore should not be modified after being passed in.
-    public State(int[] agentRows, int[] agentCols, Color[] agentColors, boolean[][] walls,
-                 char[][] boxes, Color[] boxColors, char[][] goals
-    )
-    {
-        this.agentRows = agentRows;
-        this.agentCols = agentCols;
-        this.agentColors = agentColors;
-        this.walls = walls;
+    public State(Level level, int[] agentCells, char[] boxes)
+    {
+        this.level = level;
+        this.agentCells = agentCells;
         this.boxes = boxes;
-        this.boxColors = boxColors;
-        this.goals = goals;
         this.parent = null;
-        this.jointAction = null;
+        this.jointActionCode = -1;
         this.g = 0;
         this.pp = 0;
-        this.passableGoals = goals;
         this.movePenalties = 0;
     }
 
 
+    // Reconstructs a state saved by a Checkpointer, with the path costs it had in the search.
+    State(Level level, int[] agentCells, char[] boxes, State parent, int jointActionCode, int g, int pp,
+          int movePenalties)
+    {
+        this.level = level;
+        this.agentCells = agentCells;
+        this.boxes = boxes;
+        this.parent = parent;
+        this.jointActionCode = jointActionCode;
+        this.g = g;
+        this.pp = pp;
+        this.movePenalties = movePenalties;
+    }
+
+
     // Constructs the state resulting from applying jointAction in parent.
     // Precondition: Joint action must be applicable and non-conflicting in parent state.
     private State(State parent, Action[] jointAction)
     {
         // Copy parent
-        this.agentRows = Arrays.copyOf(parent.agentRows, parent.agentRows.length);
-        this.agentCols = Arrays.copyOf(parent.agentCols, parent.agentCols.length);
-        this.boxes = new char[parent.boxes.length][];
-        for (int i = 0; i < parent.boxes.length; i++)
-        {
-            this.boxes[i] = Arrays.copyOf(parent.boxes[i], parent.boxes[i].length);
-        }
+        this.level = parent.level;
+        this.agentCells = Arrays.copyOf(parent.agentCells, parent.agentCells.length);
+        this.boxes = Arrays.copyOf(parent.boxes, parent.boxes.length);
 
         // Set own parameters
         this.parent = parent;
-        this.jointAction = Arrays.copyOf(jointAction, jointAction.length);
+        this.jointActionCode = JointAction.intern(jointAction);
         this.g = parent.g + 1;
         this.pp = parent.pp;
         this.movePenalties = parent.movePenalties;
 
-        // Apply each action
-        int numAgents = this.agentRows.length;
+        this.apply(jointAction);
+    }
+
+    // Constructs the state resulting from an agent walking through a tunnel, starting with the Move in
+    // jointAction and ending in endCell after the given number of primitive moves.
+    // Precondition: Every cell on the way must be free in parent state.
+    private State(State parent, Action[] jointAction, int agent, int endCell, int steps)
+    {
+        this.level = parent.level;
+        this.agentCells = Arrays.copyOf(parent.agentCells, parent.agentCells.length);
+        this.boxes = parent.boxes;
+        this.parent = parent;
+        this.jointActionCode = JointAction.intern(jointAction);
+        this.g = parent.g + steps;
+        this.pp = parent.pp;
+        this.movePenalties = parent.movePenalties + steps;
+        this.agentCells[agent] = endCell;
+    }
+
+    // Applies jointAction to this state, which must own its arrays. Used by the plan simulator, which steps a
+    // single copy of the initial state through a plan instead of creating a state per step.
+    // Precondition: Joint action must be applicable and non-conflicting in this state.
+    void applyInPlace(Action[] jointAction)
+    {
+        this.apply(jointAction);
+        this.hash = 0;
+    }
+
+    // Moves the agents and boxes of this state by jointAction, or back when undo is set, for searches that walk a
+    // single state through the search tree. The state must own its arrays; g, pp and movePenalties are unchanged.
+    // Precondition: Joint action must be applicable and non-conflicting in this state (before it, when undoing).
+    void step(Action[] jointAction, boolean undo)
+    {
+        int[] agentDeltas = this.level.agentDeltas;
+        int[] boxDeltas = this.level.boxDeltas;
+        char[] boxes = this.boxes;
+        for (int agent = 0; agent < this.agentCells.length; ++agent)
+        {
+            Action action = jointAction[agent];
+            int agentDelta = agentDeltas[action.ordinal()];
+            int boxDelta = boxDeltas[action.ordinal()];
+            int agentCell = undo ? this.agentCells[agent] - agentDelta : this.agentCells[agent];
+            // The cells the box moves from and to.
+            int from;
+            int to;
+            switch (action.type)
+            {
+                case Push:
+                    from = agentCell + agentDelta;
+                    to = from + boxDelta;
+                    break;
+                case Pull:
+                    from = agentCell - boxDelta;
+                    to = agentCell;
+                    break;
+                default:
+                    this.agentCells[agent] = undo ? agentCell : agentCell + agentDelta;
+                    continue;
+            }
+            if (undo)
+            {
+                boxes[from] = boxes[to];
+                boxes[to] = 0;
+            }
+            else
+            {
+                boxes[to] = boxes[from];
+                boxes[from] = 0;
+            }
+            this.agentCells[agent] = undo ? agentCell : agentCell + agentDelta;
+        }
+        this.hash = 0;
+    }
+
+    private void apply(Action[] jointAction)
+    {
+        int[] agentDeltas = this.level.agentDeltas;
+        int[] boxDeltas = this.level.boxDeltas;
+        int numAgents = this.agentCells.length;
         for (int agent = 0; agent < numAgents; ++agent)
         {
             Action action = jointAction[agent];
             char box;
-            int boxRow;
-            int boxCol;
+            int boxCell;
+            int boxDelta;
             switch (action.type)
             {
                 case NoOp:
@@ -107,39 +226,36 @@ public class State
 
                 case Move:
                     this.movePenalties+=1;
-                    this.agentRows[agent] += action.agentRowDelta;
-                    this.agentCols[agent] += action.agentColDelta;
+                    this.agentCells[agent] += agentDeltas[action.ordinal()];
                     break;
                 case Push:
                     this.pp+=1;
-                    
+
                     //Get the box location
-                    boxRow = this.agentRows[agent] + action.agentRowDelta;
-                    boxCol = this.agentCols[agent] + action.agentColDelta;
+                    boxCell = this.agentCells[agent] + agentDeltas[action.ordinal()];
+                    boxDelta = boxDeltas[action.ordinal()];
                     //Get the box char
-                    box = this.boxes[boxRow][boxCol];
+                    box = this.boxes[boxCell];
                     //Set previous location to 0, and current location to the box char
-                    this.boxes[boxRow][boxCol] = 0;
-                    this.boxes[boxRow+action.boxRowDelta][boxCol+action.boxColDelta] = box;
+                    this.boxes[boxCell] = 0;
+                    this.boxes[boxCell + boxDelta] = box;
                     //Add delta to the agent location
-                    this.agentRows[agent] += action.agentRowDelta;
-                    this.agentCols[agent] += action.agentColDelta;
-                    resultCloserToGoal(boxRow, boxCol, boxRow+action.boxRowDelta, boxCol+action.boxColDelta, box);
+                    this.agentCells[agent] += agentDeltas[action.ordinal()];
+                    resultCloserToGoal(boxCell, boxCell + boxDelta, box);
                     break;
                 case Pull:
                     this.pp+=1;
                     //Get the box location
-                    boxRow = this.agentRows[agent] - action.boxRowDelta;
-                    boxCol = this.agentCols[agent] - action.boxColDelta;
+                    boxDelta = boxDeltas[action.ordinal()];
+                    boxCell = this.agentCells[agent] - boxDelta;
                     //Get the box char
-                    box = this.boxes[boxRow][boxCol];
+                    box = this.boxes[boxCell];
                     //Set previous location to 0, and current location to the box char
-                    this.boxes[boxRow][boxCol] = 0;
-                    this.boxes[boxRow+action.boxRowDelta][boxCol+action.boxColDelta] = box;
+                    this.boxes[boxCell] = 0;
+                    this.boxes[boxCell + boxDelta] = box;
                     //Add delta to the agent location
-                    this.agentRows[agent] += action.agentRowDelta;
-                    this.agentCols[agent] += action.agentColDelta;
-                    resultCloserToGoal(boxRow, boxCol, boxRow+action.boxRowDelta, boxCol+action.boxColDelta, box);
+                    this.agentCells[agent] += agentDeltas[action.ordinal()];
+                    resultCloserToGoal(boxCell, boxCell + boxDelta, box);
                     break;
             }
         }
@@ -158,255 +274,615 @@ public class State
 
     public boolean isGoalState()
     {
-        for (int row = 1; row < this.goals.length - 1; row++)
+        char[] goals = this.level.goals;
+        for (int cell : this.level.goalCells)
         {
-            for (int col = 1; col < this.goals[row].length - 1; col++)
-            {
-                char goal = this.goals[row][col];
+            char goal = goals[cell];
 
-                if ('A' <= goal && goal <= 'Z' && this.boxes[row][col] != goal)
-                {
-                    return false;
-                }
-                else if ('0' <= goal && goal <= '9' &&
-                         !(this.agentRows[goal - '0'] == row && this.agentCols[goal - '0'] == col))
-                {
-                    return false;
-                }
+            if ('A' <= goal && goal <= 'Z' && this.boxes[cell] != goal)
+            {
+                return false;
+            }
+            else if ('0' <= goal && goal <= '9' && this.agentCells[goal - '0'] != cell && !this.canWalkTo(cell))
+            {
+                return false;
             }
         }
         return true;
     }
+
+    // True if this is the initial state of a push level and its agent can walk to cell. The agent of any other
+    // push-level state stands on its goal exactly when it can walk there, see canonicalCell, and extractPushPlan
+    // adds the walk.
+    private boolean canWalkTo(int cell)
+    {
+        if (!this.level.pushMacros || this.parent != null)
+        {
+            return false;
+        }
+        int numCells = this.level.numCells;
+        int[] cells = new int[numCells];
+        Scratch scratch = new Scratch();
+        scratch.reachedBy = new int[numCells];
+        int reached = this.walkRegion(this.agentCells[0], cell, cells, new int[numCells], scratch);
+        return cells[reached - 1] == cell;
+    }
+
+    // The number of boxes in the way of the box the search is after, see Level.clearCells.
+    public int blockingBoxes()
+    {
+        int[] clearCells = this.level.clearCells;
+        if (clearCells == null)
+        {
+            return 0;
+        }
+        int blocking = 0;
+        for (int cell : clearCells)
+        {
+            if (this.boxes[cell] != 0 && this.boxes[cell] != this.level.clearLetter)
+            {
+                ++blocking;
+            }
+        }
+        return blocking;
+    }
+
+    // The distance to the goal of the stage of the nearest box of the letter being placed, see Level.clearDistances.
+    public int subgoalDistance()
+    {
+        int[] clearDistances = this.level.clearDistances;
+        if (clearDistances == null)
+        {
+            return 0;
+        }
+        int nearest = Integer.MAX_VALUE;
+        for (int cell = 0; cell < this.boxes.length; ++cell)
+        {
+            if (this.boxes[cell] == this.level.clearLetter && clearDistances[cell] >= 0)
+            {
+                nearest = Math.min(nearest, clearDistances[cell]);
+            }
+        }
+        return nearest == Integer.MAX_VALUE ? 0 : nearest;
+    }
+
     //Method for verifying whether a push/pull resulted in a box being closer to the goal
-    public void resultCloserToGoal(int oldRow, int oldCol, int newRow, int newCol, int boxChar){
-        boolean foundGoal = false;
-        //Loop through goals
-        for (int row = 1; row < this.goals.length - 1; row++)
-        {
-            for (int col = 1; col < this.goals[row].length - 1; col++)
-            {
-                //If we have found a goal that matches the box character, stop looking for goals and give movement penalties
-                if(foundGoal == false){
-                char goal = this.goals[row][col];
-                if(boxChar == goal){
-                if ('A' <= goal && goal <= 'Z' && this.boxes[row][col] != goal)
-                {
-                    foundGoal = true;
-                    //The delta of the box movement
-                    int changeRow = newRow - oldRow;
-                    int changeCol = newCol - oldCol;
-                    //If the goal row is higher that than the old box position, that means the box needs to be moved to the right, i.e. delta = 1
-                    if(row>oldRow){
-                        //If the delta is higher, we can remove a penalty point
-                        if(changeRow>0){
-                            this.movePenalties = this.movePenalties - 1;
-                        }
-                        //If the delta is lower, we add a penalty
-                        if(changeRow<0){
-                            this.movePenalties = this.movePenalties + 1;
-                        }
+    public void resultCloserToGoal(int oldCell, int newCell, int boxChar){
+        Level level = this.level;
+        int oldRow = level.row(oldCell);
+        int oldCol = level.col(oldCell);
+        //The delta of the box movement
+        int changeRow = level.row(newCell) - oldRow;
+        int changeCol = level.col(newCell) - oldCol;
+        //Loop through goals, and stop at the first goal that matches the box character
+        for (int cell : level.goalCells)
+        {
+            char goal = level.goals[cell];
+            if(boxChar == goal && 'A' <= goal && goal <= 'Z' && this.boxes[cell] != goal)
+            {
+                int row = level.row(cell);
+                int col = level.col(cell);
+                //If the goal row is higher that than the old box position, that means the box needs to be moved to the right, i.e. delta = 1
+                if(row>oldRow){
+                    //If the delta is higher, we can remove a penalty point
+                    if(changeRow>0){
+                        this.movePenalties = this.movePenalties - 1;
                     }
-                    //If the goal row is smaller than the old box position, that means the box needs to be moved to the left, i.e. delta = -1
-                    else if(row<oldRow){
-                        //If the delta is lower, we can remove a penalty point
-                        if(changeRow<0){
-                            this.movePenalties = this.movePenalties - 1;
-                        }
-                        //If the delta is higher, we add a penalty
-                        if(changeRow>0){
-                            this.movePenalties = this.movePenalties + 1;
-                        }
+                    //If the delta is lower, we add a penalty
+                    if(changeRow<0){
+                        this.movePenalties = this.movePenalties + 1;
                     }
-                    //If the goal col is higher that than the old box position, that means the box needs to be moved down, i.e. delta = 1
-                    if(col>oldCol){
-                        //If the delta is higher, we can remove a penalty point
-                        if(changeCol>0){
-                            this.movePenalties = this.movePenalties - 1;
-                        }
-                        //If the delta is lower, we add a penalty
-                        if(changeCol<0){
-                            this.movePenalties = this.movePenalties + 1;
-                        }
+                }
+                //If the goal row is smaller than the old box position, that means the box needs to be moved to the left, i.e. delta = -1
+                else if(row<oldRow){
+                    //If the delta is lower, we can remove a penalty point
+                    if(changeRow<0){
+                        this.movePenalties = this.movePenalties - 1;
                     }
-                    //If the goal col is higher that than the old box position, that means the box needs to be moved up, i.e. delta = -1
-                    else if(col<oldCol){
-                        //If the delta is lower, we can remove a penalty point
-                        if(changeCol<0){
-                            this.movePenalties = this.movePenalties - 1;
-                        }
-                        //If the delta is higher, we add a penalty
-                        if(changeCol>0){
-                            this.movePenalties = this.movePenalties + 1;
-                        }
+                    //If the delta is higher, we add a penalty
+                    if(changeRow>0){
+                        this.movePenalties = this.movePenalties + 1;
                     }
                 }
+                //If the goal col is higher that than the old box position, that means the box needs to be moved down, i.e. delta = 1
+                if(col>oldCol){
+                    //If the delta is higher, we can remove a penalty point
+                    if(changeCol>0){
+                        this.movePenalties = this.movePenalties - 1;
+                    }
+                    //If the delta is lower, we add a penalty
+                    if(changeCol<0){
+                        this.movePenalties = this.movePenalties + 1;
+                    }
                 }
-            }
+                //If the goal col is higher that than the old box position, that means the box needs to be moved up, i.e. delta = -1
+                else if(col<oldCol){
+                    //If the delta is lower, we can remove a penalty point
+                    if(changeCol<0){
+                        this.movePenalties = this.movePenalties - 1;
+                    }
+                    //If the delta is higher, we add a penalty
+                    if(changeCol>0){
+                        this.movePenalties = this.movePenalties + 1;
+                    }
+                }
+                return;
             }
         }
     }
 
     public ArrayList<State> getExpandedStates()
     {
-        int numAgents = this.agentRows.length;
+        ArrayList<State> expandedStates = new ArrayList<>(16);
+        this.getExpandedStates(expandedStates);
+        return expandedStates;
+    }
 
-        // Determine list of applicable actions for each individual agent.
-        Action[][] applicableActions = new Action[numAgents][];
+    // Replaces the contents of expandedStates with the children of this state.
+    // Apart from the children themselves, this allocates nothing once the list has grown to size, except for wide
+    // expansions, which are generated in parallel.
+    public void getExpandedStates(ArrayList<State> expandedStates)
+    {
+        int numAgents = this.agentCells.length;
+        Scratch scratch = SCRATCH.get();
+        expandedStates.clear();
+        if (this.level.pushMacros)
+        {
+            this.getPushStates(expandedStates, scratch);
+            Collections.shuffle(expandedStates, this.level.random);
+            return;
+        }
+
+        // Determine the applicable actions of each individual agent, as a bitmask over Action ordinals.
+        int[] applicableActions = scratch.applicableActions;
         for (int agent = 0; agent < numAgents; ++agent)
         {
-            ArrayList<Action> agentActions = new ArrayList<>(Action.values().length);
-            for (Action action : Action.values())
+            int mask = 0;
+            for (Action action : ACTIONS)
             {
                 if (this.isApplicable(agent, action))
                 {
-                    agentActions.add(action);
+                    mask |= 1 << action.ordinal();
                 }
             }
-            applicableActions[agent] = agentActions.toArray(new Action[0]);
+            applicableActions[agent] = mask;
+        }
+        if (this.level.canonicalOrder && this.jointActionCode != -1 && numAgents > 1)
+        {
+            this.removeDelayableActions(applicableActions, scratch);
         }
 
-        // Iterate over joint actions, check conflict and generate child states.
-        Action[] jointAction = new Action[numAgents];
-        int[] actionsPermutation = new int[numAgents];
-        ArrayList<State> expandedStates = new ArrayList<>(16);
-        while (true)
+        long numJointActions = 1;
+        for (int agent = 0; agent < numAgents; ++agent)
+        {
+            numJointActions *= Integer.bitCount(applicableActions[agent]);
+        }
+        if (numJointActions >= PARALLEL_THRESHOLD && PARALLELISM > 1)
+        {
+            this.expandInParallel(applicableActions, numJointActions, expandedStates);
+        }
+        else
+        {
+            this.expandRange(applicableActions, 0, numJointActions, expandedStates, scratch);
+        }
+
+        Collections.shuffle(expandedStates, this.level.random);
+    }
+
+    /*
+        Partial-order reduction of the interleavings of independent agents. If an agent did a NoOp in the joint action
+        that produced this state, and an action it can do now changes no cell that the other agents' actions changed
+        in that joint action, it could have done that action one step earlier, in place of the NoOp, and every child
+        of a joint action with it is also reached in as many steps by doing it earlier and a NoOp now. Such actions
+        are removed from the agent's applicable actions, so agents working apart act as early as they can instead of
+        in every order. Each such exchange moves an action one step earlier on a path of the same length, so a
+        shortest path to every state is kept, provided the state that is expanded is reached by a shortest path.
+        That holds if states are expanded in order of their shortest distance, as in -bfs. -astar only expands
+        them so with a consistent heuristic, which the default goal count with move penalties is not, so other
+        strategies search again without the reduction if they run out of states, see SearchOptions.
+    */
+    private void removeDelayableActions(int[] applicableActions, Scratch scratch)
+    {
+        Action[] parentAction = JointAction.decode(this.jointActionCode);
+        int numAgents = this.agentCells.length;
+        int[] parentCells = scratch.parentCells;
+        int numParentCells = 0;
+        for (int agent = 0; agent < numAgents; ++agent)
+        {
+            Action action = parentAction[agent];
+            if (action.type != ActionType.NoOp)
+            {
+                int cell = this.agentCells[agent] - this.level.agentDeltas[action.ordinal()];
+                numParentCells += this.changedCells(action, cell, parentCells, numParentCells);
+            }
+        }
+        int[] actionCells = scratch.actionCells;
+        for (int agent = 0; agent < numAgents; ++agent)
+        {
+            if (parentAction[agent].type != ActionType.NoOp)
+            {
+                continue;
+            }
+            // NoOp is bit 0, and is never removed.
+            for (int mask = applicableActions[agent] & ~1; mask != 0; mask &= mask - 1)
+            {
+                Action action = ACTIONS[Integer.numberOfTrailingZeros(mask)];
+                int numActionCells = this.changedCells(action, this.agentCells[agent], actionCells, 0);
+                if (!intersects(actionCells, numActionCells, parentCells, numParentCells))
+                {
+                    applicableActions[agent] &= ~(1 << action.ordinal());
+                }
+            }
+        }
+    }
+
+    // Writes the cells that action changes when done from agentCell, those the agent and its box leave and enter, to
+    // cells from offset on, and returns their number.
+    private int changedCells(Action action, int agentCell, int[] cells, int offset)
+    {
+        int agentDelta = this.level.agentDeltas[action.ordinal()];
+        int boxDelta = this.level.boxDeltas[action.ordinal()];
+        cells[offset] = agentCell;
+        cells[offset + 1] = agentCell + agentDelta;
+        switch (action.type)
+        {
+            case Push:
+                cells[offset + 2] = agentCell + agentDelta + boxDelta;
+                return 3;
+            case Pull:
+                cells[offset + 2] = agentCell - boxDelta;
+                return 3;
+            default:
+                return 2;
+        }
+    }
+
+    private static boolean intersects(int[] cells, int numCells, int[] otherCells, int numOtherCells)
+    {
+        for (int i = 0; i < numCells; ++i)
+        {
+            for (int j = 0; j < numOtherCells; ++j)
+            {
+                if (cells[i] == otherCells[j])
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Generates the children of the joint actions with indices first to first + count - 1, in the order of a
+    // counter whose digits are the applicable actions of each agent, agent 0 being the lowest digit.
+    private void expandRange(int[] applicableActions, long first, long count, List<State> children, Scratch scratch)
+    {
+        int numAgents = this.agentCells.length;
+        // actionsPermutation[agent] is the ordinal of the agent's current action, always a set bit of its mask.
+        Action[] jointAction = scratch.jointActions[numAgents];
+        int[] actionsPermutation = scratch.actionsPermutation;
+        long index = first;
+        for (int agent = 0; agent < numAgents; ++agent)
+        {
+            int mask = applicableActions[agent];
+            int numActions = Integer.bitCount(mask);
+            for (long digit = index % numActions; digit > 0; --digit)
+            {
+                mask &= mask - 1;
+            }
+            actionsPermutation[agent] = Integer.numberOfTrailingZeros(mask);
+            index /= numActions;
+        }
+        for (long i = 0; i < count; ++i)
         {
             for (int agent = 0; agent < numAgents; ++agent)
             {
-                jointAction[agent] = applicableActions[agent][actionsPermutation[agent]];
+                jointAction[agent] = ACTIONS[actionsPermutation[agent]];
             }
 
-            if (!this.isConflicting(jointAction))
+            if (!this.isConflicting(jointAction, scratch))
             {
-                expandedStates.add(new State(this, jointAction));
+                State tunnelChild = this.level.tunnels != null ? this.walkTunnel(jointAction) : null;
+                children.add(tunnelChild != null ? tunnelChild : new State(this, jointAction));
             }
 
             // Advance permutation
-            boolean done = false;
             for (int agent = 0; agent < numAgents; ++agent)
             {
-                if (actionsPermutation[agent] < applicableActions[agent].length - 1)
+                int remaining = applicableActions[agent] & (-2 << actionsPermutation[agent]);
+                if (remaining != 0)
                 {
-                    ++actionsPermutation[agent];
+                    actionsPermutation[agent] = Integer.numberOfTrailingZeros(remaining);
                     break;
                 }
-                else
+                actionsPermutation[agent] = Integer.numberOfTrailingZeros(applicableActions[agent]);
+            }
+        }
+    }
+
+    // Splits the joint actions of a wide expansion into chunks that the common fork-join pool generates in
+    // parallel, each into a list of its own. The children are also hashed there, ahead of the duplicate checks.
+    // The lists are appended in chunk order, so the children come in the same order as when generated serially.
+    private void expandInParallel(int[] scratchActions, long numJointActions, ArrayList<State> expandedStates)
+    {
+        // The workers share a copy, as this thread's scratch buffers may be reused by tasks it runs while waiting.
+        int[] applicableActions = Arrays.copyOf(scratchActions, this.agentCells.length);
+        int numChunks = (int) Math.min(4L * PARALLELISM, numJointActions / (PARALLEL_THRESHOLD / 4));
+        List<ArrayList<State>> chunks = new ArrayList<>(numChunks);
+        List<RecursiveAction> tasks = new ArrayList<>(numChunks);
+        for (int chunk = 0; chunk < numChunks; ++chunk)
+        {
+            long first = numJointActions * chunk / numChunks;
+            long count = numJointActions * (chunk + 1) / numChunks - first;
+            ArrayList<State> children = new ArrayList<>((int) Math.min(count, 1 << 16));
+            chunks.add(children);
+            tasks.add(new RecursiveAction()
+            {
+                @Override
+                protected void compute()
                 {
-                    actionsPermutation[agent] = 0;
-                    if (agent == numAgents - 1)
+                    State.this.expandRange(applicableActions, first, count, children, SCRATCH.get());
+                    for (State child : children)
                     {
-                        done = true;
+                        child.hashCode();
                     }
                 }
+            });
+        }
+        // Outside a fork-join pool, the tasks are forked to the common pool and this thread takes its share.
+        ForkJoinTask.invokeAll(tasks);
+        for (ArrayList<State> children : chunks)
+        {
+            expandedStates.addAll(children);
+        }
+    }
+
+    // The children of a push-level state: every push and pull the agent can make from a cell of its region, after
+    // walking there. The walk is not stored; extractPlan finds it again.
+    private void getPushStates(ArrayList<State> expandedStates, Scratch scratch)
+    {
+        int numCells = this.level.numCells;
+        if (scratch.reachedBy.length < numCells)
+        {
+            scratch.regionCells = new int[numCells];
+            scratch.regionDistances = new int[numCells];
+            scratch.childCells = new int[numCells];
+            scratch.childDistances = new int[numCells];
+            scratch.reachedBy = new int[numCells];
+            scratch.walk = 0;
+        }
+        int reached = this.walkRegion(this.realAgentCell(), -1, scratch.regionCells, scratch.regionDistances,
+                                      scratch);
+        int[] agentDeltas = this.level.agentDeltas;
+        int[] boxDeltas = this.level.boxDeltas;
+        Color color = this.level.agentColors[0];
+        for (int i = 0; i < reached; ++i)
+        {
+            int cell = scratch.regionCells[i];
+            for (Action action : ACTIONS)
+            {
+                int agentDelta = agentDeltas[action.ordinal()];
+                int boxDelta = boxDeltas[action.ordinal()];
+                boolean applicable;
+                switch (action.type)
+                {
+                    case Push:
+                        applicable = this.boxHasColor(cell + agentDelta, color) &&
+                                     this.isOpen(cell + agentDelta + boxDelta);
+                        break;
+                    case Pull:
+                        applicable = this.boxHasColor(cell - boxDelta, color) && this.isOpen(cell + agentDelta);
+                        break;
+                    default:
+                        applicable = false;
+                }
+                if (applicable)
+                {
+                    expandedStates.add(new State(this, action, cell, scratch.regionDistances[i], scratch));
+                }
             }
+        }
+    }
+
+    // Constructs the push-level state resulting from the agent walking the given number of moves to cell and
+    // making the push or pull there. The agent is then placed on the canonical cell of its new region.
+    private State(State parent, Action action, int cell, int steps, Scratch scratch)
+    {
+        Action[] jointAction = scratch.jointActions[1];
+        jointAction[0] = action;
+        this.level = parent.level;
+        this.agentCells = new int[]{cell};
+        this.boxes = Arrays.copyOf(parent.boxes, parent.boxes.length);
+        this.parent = parent;
+        this.jointActionCode = JointAction.intern(jointAction);
+        this.g = parent.g + steps + 1;
+        this.pp = parent.pp;
+        this.movePenalties = parent.movePenalties + steps;
+        this.apply(jointAction);
+        this.agentCells[0] = this.canonicalCell(this.agentCells[0], scratch);
+    }
+
+    // The cell that stands for the region of cell: the agent's goal if it is in the region, so that isGoalState
+    // holds exactly when the agent can walk to it, and otherwise the first cell of the region.
+    private int canonicalCell(int cell, Scratch scratch)
+    {
+        int goal = this.agentGoalCell();
+        int reached = this.walkRegion(cell, goal, scratch.childCells, scratch.childDistances, scratch);
+        if (goal != -1 && scratch.childCells[reached - 1] == goal)
+        {
+            return goal;
+        }
+        int first = cell;
+        for (int i = 0; i < reached; ++i)
+        {
+            first = Math.min(first, scratch.childCells[i]);
+        }
+        return first;
+    }
 
-            // Last permutation?
-            if (done)
+    // Walks breadth-first from start over the cells free of walls and boxes, stopping as soon as it reaches stop (or
+    // -1 for none), which is then the last cell. Leaves the cells reached in cells, in order of distance, with their
+    // distances in distances, and returns their number. The arrays are those of scratch, and hold a cell each.
+    private int walkRegion(int start, int stop, int[] cells, int[] distances, Scratch scratch)
+    {
+        if (++scratch.walk == Integer.MAX_VALUE)
+        {
+            Arrays.fill(scratch.reachedBy, 0);
+            scratch.walk = 1;
+        }
+        int walk = scratch.walk;
+        int[][] neighbours = this.level.neighbours;
+        cells[0] = start;
+        distances[0] = 0;
+        scratch.reachedBy[start] = walk;
+        int reached = 1;
+        for (int i = 0; i < reached && cells[reached - 1] != stop; ++i)
+        {
+            for (int direction = 0; direction < Level.NUM_DIRECTIONS; ++direction)
             {
-                break;
+                int next = neighbours[direction][cells[i]];
+                if (next != -1 && this.boxes[next] == 0 && scratch.reachedBy[next] != walk)
+                {
+                    scratch.reachedBy[next] = walk;
+                    cells[reached] = next;
+                    distances[reached] = distances[i] + 1;
+                    ++reached;
+                    if (next == stop)
+                    {
+                        return reached;
+                    }
+                }
             }
         }
+        return reached;
+    }
 
-        Collections.shuffle(expandedStates, State.RNG);
-        return expandedStates;
+    // The cell from which the push or pull that produced this push-level state was made, found from the box it
+    // moved.
+    private int pushCell()
+    {
+        Action action = JointAction.decode(this.jointActionCode)[0];
+        for (int cell = 0; cell < this.boxes.length; ++cell)
+        {
+            if (this.parent.boxes[cell] != 0 && this.boxes[cell] == 0)
+            {
+                return action.type == ActionType.Push ? cell - this.level.agentDeltas[action.ordinal()]
+                                                      : cell + this.level.boxDeltas[action.ordinal()];
+            }
+        }
+        throw new IllegalStateException("No box was moved.");
+    }
+
+    // The cell the agent of a push-level state stands on. Its agentCells hold the canonical cell of its region,
+    // except in the initial state.
+    private int realAgentCell()
+    {
+        if (this.parent == null)
+        {
+            return this.agentCells[0];
+        }
+        return this.pushCell() + this.level.agentDeltas[JointAction.decode(this.jointActionCode)[0].ordinal()];
+    }
+
+    // The goal cell of agent 0, or -1 if it has none.
+    private int agentGoalCell()
+    {
+        for (int cell : this.level.goalCells)
+        {
+            if (this.level.goals[cell] == '0')
+            {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isOpen(int cell)
+    {
+        return !this.level.walls[cell] && this.boxes[cell] == 0;
+    }
+
+    // If the single agent's Move enters a tunnel that is free all the way through, returns the state where the
+    // agent has walked to the cell just past the tunnel. Otherwise returns null and the plain Move is used.
+    private State walkTunnel(Action[] jointAction)
+    {
+        Action action = jointAction[0];
+        if (action.type != ActionType.Move)
+        {
+            return null;
+        }
+        int previous = this.agentCells[0];
+        int cell = previous + this.level.agentDeltas[action.ordinal()];
+        if (!this.level.tunnels[cell])
+        {
+            return null;
+        }
+        int steps = 1;
+        while (this.level.tunnels[cell])
+        {
+            int next = LevelPreprocessor.nextTunnelCell(this.level, previous, cell);
+            if (next == -1 || !this.cellIsFree(next))
+            {
+                return null;
+            }
+            previous = cell;
+            cell = next;
+            ++steps;
+        }
+        return new State(this, jointAction, 0, cell, steps);
     }
 
-    private boolean isApplicable(int agent, Action action)
+    boolean isApplicable(int agent, Action action)
     {
-        int agentRow = this.agentRows[agent];
-        int agentCol = this.agentCols[agent];
-        Color agentColor = this.agentColors[agent];
-        int boxRow;
-        int boxCol;
-        char box;
-        int destinationRow;
-        int destinationCol;
-        int currBoxRow;
-        int currBoxCol;
+        int agentCell = this.agentCells[agent];
+        Color agentColor = this.level.agentColors[agent];
+        int agentDelta = this.level.agentDeltas[action.ordinal()];
+        int boxDelta = this.level.boxDeltas[action.ordinal()];
+        int boxCell;
         switch (action.type)
         {
             case NoOp:
                 return true;
 
             case Move:
-                destinationRow = agentRow + action.agentRowDelta;
-                destinationCol = agentCol + action.agentColDelta;
-                return this.cellIsFree(destinationRow, destinationCol);
+                return this.cellIsFree(agentCell + agentDelta);
             case Push:
-                //Destination cell of the agent
-                destinationRow = agentRow + action.agentRowDelta;
-                destinationCol = agentCol + action.agentColDelta;
                 //Current box cell, same as the agent destination
-                currBoxRow = destinationRow;
-                currBoxCol = destinationCol;
-                //Destination cell of the box
-                boxRow = currBoxRow + action.boxRowDelta;
-                boxCol = currBoxCol + action.boxColDelta;
-                //if the destination cell contains a box
-                if(this.containsBox(destinationRow, destinationCol)){
-                    //get the box index
-                    int boxIndex = this.boxAt(destinationRow, destinationCol);
-                    if(boxIndex == -1){
-                        return false;
-                    }
-                    //check if the colors match
-                    Color boxColor = boxColors[boxIndex];
-                    if(boxColor == agentColor){
-                        //return if the destination cell of the box is free
-                        return this.cellIsFree(boxRow, boxCol);
-                    }
-                }
-                return false;
+                boxCell = agentCell + agentDelta;
+                //if the destination cell contains a box of the agent's color,
+                //return if the destination cell of the box is free
+                return this.boxHasColor(boxCell, agentColor) && this.cellIsFree(boxCell + boxDelta);
             case Pull:
-                //Destination of the agent
-                destinationRow = agentRow + action.agentRowDelta;
-                destinationCol = agentCol + action.agentColDelta;
-                //Current box location
-                currBoxRow = agentRow - action.boxRowDelta;
-                currBoxCol = agentCol - action.boxColDelta;
-                //Destination cell of the box, same as the current agent location
-                boxRow = agentRow;
-                boxCol = agentCol;
-                //If the cell contains a box
-                if(this.containsBox(currBoxRow, currBoxCol)){
-                    //get the box index
-                    int boxIndex = this.boxAt(currBoxRow, currBoxCol);
-                    if(boxIndex == -1){
-                        return false;
-                    }
-                    //check if the colors match
-                    Color boxColor = boxColors[boxIndex];
-                    if(boxColor == agentColor){
-                        //return if the destination cell of the agent is free
-                        return this.cellIsFree(destinationRow, destinationCol);
-                    } 
-                }
-                return false;
+                //Current box cell. The box moves into the current cell of the agent
+                boxCell = agentCell - boxDelta;
+                //If the cell contains a box of the agent's color,
+                //return if the destination cell of the agent is free
+                return this.boxHasColor(boxCell, agentColor) && this.cellIsFree(agentCell + agentDelta);
         }
 
         // Unreachable:
         return false;
     }
 
-    private boolean isConflicting(Action[] jointAction)
+    boolean isConflicting(Action[] jointAction)
+    {
+        return this.isConflicting(jointAction, SCRATCH.get());
+    }
+
+    private boolean isConflicting(Action[] jointAction, Scratch scratch)
     {
-        int numAgents = this.agentRows.length;
+        int numAgents = this.agentCells.length;
+        int[] agentDeltas = this.level.agentDeltas;
+        int[] boxDeltas = this.level.boxDeltas;
 
-        int[] destinationRows = new int[numAgents]; // row of new cell to become occupied by action
-        int[] destinationCols = new int[numAgents]; // column of new cell to become occupied by action
-        int[] boxRows = new int[numAgents]; // current row of box moved by action
-        int[] boxCols = new int[numAgents]; // current column of box moved by action
+        int[] destinationCells = scratch.destinationCells; // cell to become occupied by action
+        int[] boxCells = scratch.boxCells; // destination cell of box moved by action
+        int[] boxSources = scratch.boxSources; // current cell of box moved by action
 
         // Collect cells to be occupied and boxes to be moved
         for (int agent = 0; agent < numAgents; ++agent)
         {
             Action action = jointAction[agent];
-            int agentRow = this.agentRows[agent];
-            int agentCol = this.agentCols[agent];
-            int boxRow;
-            int boxCol;
-            int currBoxRow;
-            int currBoxCol;
+            int agentCell = this.agentCells[agent];
 
             switch (action.type)
             {
@@ -414,32 +890,23 @@ public class State
                     break;
 
                 case Move:
-                    destinationRows[agent] = agentRow + action.agentRowDelta;
-                    destinationCols[agent] = agentCol + action.agentColDelta;
-                    boxRows[agent] = agentRow; // Distinct dummy value
-                    boxCols[agent] = agentCol; // Distinct dummy value
+                    destinationCells[agent] = agentCell + agentDeltas[action.ordinal()];
+                    boxCells[agent] = agentCell; // Distinct dummy value
+                    boxSources[agent] = -1 - agent; // Distinct dummy value
                     break;
                 case Push:
-                    //The destination cell of an agent
-                    destinationRows[agent] = agentRow + action.agentRowDelta;
-                    destinationCols[agent] = agentCol + action.agentColDelta;
-                    //The current cell of a box
-                    currBoxRow = destinationRows[agent];
-                    currBoxCol = destinationCols[agent];
+                    //The destination cell of an agent, which is the current cell of the box
+                    destinationCells[agent] = agentCell + agentDeltas[action.ordinal()];
                     //The destination cell of a box
-                    boxRows[agent] = currBoxRow+action.boxRowDelta;
-                    boxCols[agent] = currBoxCol+action.boxColDelta;
+                    boxCells[agent] = destinationCells[agent] + boxDeltas[action.ordinal()];
+                    boxSources[agent] = destinationCells[agent];
                     break;
                 case Pull:
                     //The destination cell of an agent
-                    destinationRows[agent] = agentRow + action.agentRowDelta;
-                    destinationCols[agent] = agentCol + action.agentColDelta;
+                    destinationCells[agent] = agentCell + agentDeltas[action.ordinal()];
                     //The destination cell of a box. The same as the current location of the agent
-                    boxRows[agent] = agentRows[agent];
-                    boxCols[agent] = agentCols[agent];
-                    //The current cell of a box. 
-                    currBoxRow = boxRows[agent] - action.boxRowDelta;
-                    currBoxCol = boxCols[agent] - action.boxColDelta;
+                    boxCells[agent] = agentCell;
+                    boxSources[agent] = agentCell - boxDeltas[action.ordinal()];
                     break;
            }
         }
@@ -459,20 +926,24 @@ public class State
                 }
 
                 // Moving into same cell?
-                if (destinationRows[a1] == destinationRows[a2] && destinationCols[a1] == destinationCols[a2])
+                if (destinationCells[a1] == destinationCells[a2])
                 {
                     return true;
                 }
                 //Agent moving into a box?
-                else if (destinationRows[a1] == boxRows[a2] && destinationCols[a1] == boxCols[a2]){
+                else if (destinationCells[a1] == boxCells[a2]){
                     return true;
                 }
                 //A box moving into an agent?
-                else if (boxRows[a1] == destinationRows[a2] && boxCols[a1] == destinationCols[a2]){
+                else if (boxCells[a1] == destinationCells[a2]){
                     return true;
                 }
                 //A box moving into a box?
-                else if(boxRows[a1] == boxRows[a2] && boxCols[a1] == boxCols[a2]){
+                else if(boxCells[a1] == boxCells[a2]){
+                    return true;
+                }
+                //Two agents moving the same box?
+                else if(boxSources[a1] == boxSources[a2]){
                     return true;
                 }
 
@@ -482,78 +953,57 @@ public class State
         return false;
     }
 
-    // Method for checking whether a cell contains a box
-    private boolean containsBox(int row, int col){
-        return this.boxes[row][col]!=0;
-
+    // Method for checking whether a cell contains a box of the given color
+    private boolean boxHasColor(int cell, Color color){
+        int boxIndex = this.boxAt(cell);
+        return boxIndex != -1 && this.level.boxColors[boxIndex] == color;
     }
-    //Method for retrieving the index of the box, based on the row and col it belongs at.
-    private int boxAt(int row, int col){
-        if(this.boxes[row][col]!=0){
-            return getIndexFromChar(this.boxes[row][col]);
+    //Method for retrieving the index of the box, based on the cell it belongs at.
+    private int boxAt(int cell){
+        if(this.boxes[cell]!=0){
+            return getIndexFromChar(this.boxes[cell]);
         }
         return -1;
     }
     //Method for converting a character to an integer. Used to identify the index of the boxes.
     private int getIndexFromChar(char character){
-        switch(Character.toLowerCase(character)){
-            case 'a':
-                return 0;
-            case 'b':
-                return 1;
-            case 'c':
-                return 2;
-            case 'd':
-                return 3;
-            case 'e':
-                return 4;
-            case 'f':
-                return 5;
-            case 'g':
-                return 6;
-            case 'h':
-                return 7;
-            case 'i':
-                return 8;
-            default:
-                return -1;
+        if ('A' <= character && character <= 'Z'){
+            return character - 'A';
         }
+        return -1;
     }
 
     //Method to retrieve the amount of goals
     public int getGoals(){
         int totalGoals = 0;
-        char[][] passedGoals = this.passableGoals;
-        //Loop through the goals array and count the goals
-        for (int i=0; i < passedGoals.length; i++){
-            for (int j=0; j < passedGoals[i].length; j++){
-                char curGoal = passedGoals[i][j];
-                if ('A' <= curGoal && curGoal <= 'Z' && this.boxes[i][j] != curGoal)
-                {
-                    totalGoals++;
-                }
-                else if ('0' <= curGoal && curGoal <= '9' &&
-                        !(this.agentRows[curGoal - '0'] == i && this.agentCols[curGoal - '0'] == j))
-                {
-                    totalGoals++;
-                }
+        char[] goals = this.level.goals;
+        //Loop through the goal cells and count the unsatisfied goals
+        for (int cell : this.level.goalCells){
+            char curGoal = goals[cell];
+            if ('A' <= curGoal && curGoal <= 'Z' && this.boxes[cell] != curGoal)
+            {
+                totalGoals++;
+            }
+            else if ('0' <= curGoal && curGoal <= '9' && this.agentCells[curGoal - '0'] != cell)
+            {
+                totalGoals++;
             }
         }
         return totalGoals;
     }
 
-    private boolean cellIsFree(int row, int col)
+    private boolean cellIsFree(int cell)
     {
-        return !this.walls[row][col] && this.boxes[row][col] == 0 && this.agentAt(row, col) == 0;
+        return !this.level.walls[cell] && this.boxes[cell] == 0 && this.agentAt(cell) == 0;
     }
-    
-    
 
-    private char agentAt(int row, int col)
+
+
+    private char agentAt(int cell)
     {
-        for (int i = 0; i < this.agentRows.length; i++)
+        for (int i = 0; i < this.agentCells.length; i++)
         {
-            if (this.agentRows[i] == row && this.agentCols[i] == col)
+            if (this.agentCells[i] == cell)
             {
                 return (char) ('0' + i);
             }
@@ -561,47 +1011,157 @@ public class State
         return 0;
     }
 
+    // The rows of the returned plan are the canonical interned joint actions and must not be modified.
     public Action[][] extractPlan()
     {
+        if (this.level.pushMacros)
+        {
+            return this.extractPushPlan();
+        }
         Action[][] plan = new Action[this.g][];
         State state = this;
-        while (state.jointAction != null)
+        while (state.jointActionCode != -1)
         {
-            plan[state.g - 1] = state.jointAction;
+            if (state.g - state.parent.g > 1)
+            {
+                state.expandTunnelWalk(plan);
+            }
+            else
+            {
+                plan[state.g - 1] = JointAction.decode(state.jointActionCode);
+            }
             state = state.parent;
         }
         return plan;
     }
 
-    @Override
-    public int hashCode()
+    // The plan of a push-level state: the walk before each push or pull is found again, and a walk to the agent's
+    // goal is added at the end.
+    private Action[][] extractPushPlan()
     {
-        if (this.hash == 0)
+        ArrayList<State> states = new ArrayList<>();
+        for (State state = this; state != null; state = state.parent)
+        {
+            states.add(state);
+        }
+        Collections.reverse(states);
+        ArrayList<Action[]> plan = new ArrayList<>(this.g + 1);
+        int cell = states.get(0).agentCells[0];
+        for (int i = 1; i < states.size(); ++i)
+        {
+            State state = states.get(i);
+            int from = state.pushCell();
+            state.parent.addWalk(plan, cell, from);
+            plan.add(JointAction.decode(state.jointActionCode));
+            cell = from + this.level.agentDeltas[JointAction.decode(state.jointActionCode)[0].ordinal()];
+        }
+        int goal = this.agentGoalCell();
+        if (goal != -1)
         {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + Arrays.hashCode(this.agentColors);
-            result = prime * result + Arrays.hashCode(this.boxColors);
-            result = prime * result + Arrays.deepHashCode(this.walls);
-            result = prime * result + Arrays.deepHashCode(this.goals);
-            result = prime * result + Arrays.hashCode(this.agentRows);
-            result = prime * result + Arrays.hashCode(this.agentCols);
-            for (int row = 0; row < this.boxes.length; ++row)
-            {
-                for (int col = 0; col < this.boxes[row].length; ++col)
+            this.addWalk(plan, cell, goal);
+        }
+        return plan.toArray(new Action[0][]);
+    }
+
+    // Adds the moves of a shortest walk from one cell to another among the boxes of this state to the plan. Only
+    // for a single agent, as other agents are not in the way.
+    void addWalk(List<Action[]> plan, int from, int to)
+    {
+        int numCells = this.level.numCells;
+        int[] cells = new int[numCells];
+        int[] cellDistances = new int[numCells];
+        Scratch scratch = new Scratch();
+        scratch.reachedBy = new int[numCells];
+        int reached = this.walkRegion(to, from, cells, cellDistances, scratch);
+        // Walking back from the goal of the walk, each cell is one closer to it than the cell before.
+        int[] distances = new int[numCells];
+        Arrays.fill(distances, -1);
+        for (int i = 0; i < reached; ++i)
+        {
+            distances[cells[i]] = cellDistances[i];
+        }
+        Action[] move = new Action[1];
+        int cell = from;
+        while (cell != to)
+        {
+            for (int direction = 0; direction < Level.NUM_DIRECTIONS; ++direction)
+            {
+                int next = this.level.neighbours[direction][cell];
+                if (next != -1 && distances[next] == distances[cell] - 1 && distances[next] >= 0)
                 {
-                    char c = this.boxes[row][col];
-                    if (c != 0)
-                    {
-                        result = prime * result + (row * this.boxes[row].length + col) * c;
-                    }
+                    move[0] = LevelPreprocessor.moveBetween(this.level, cell, next);
+                    plan.add(JointAction.decode(JointAction.intern(move)));
+                    cell = next;
+                    break;
                 }
             }
-            this.hash = result;
+        }
+    }
+
+    // Writes the primitive moves of the tunnel walk that produced this state into its slots of the plan.
+    private void expandTunnelWalk(Action[][] plan)
+    {
+        Action[] move = new Action[1];
+        int previous = this.parent.agentCells[0];
+        int cell = previous + this.level.agentDeltas[JointAction.decode(this.jointActionCode)[0].ordinal()];
+        for (int step = this.parent.g; step < this.g; ++step)
+        {
+            move[0] = LevelPreprocessor.moveBetween(this.level, previous, cell);
+            plan[step] = JointAction.decode(JointAction.intern(move));
+            int next = LevelPreprocessor.nextTunnelCell(this.level, previous, cell);
+            previous = cell;
+            cell = next;
+        }
+    }
+
+    // A 64-bit hash of the agents and boxes, for structures that identify states by hash alone.
+    public long fingerprint()
+    {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int agentCell : this.agentCells)
+        {
+            h = (h ^ agentCell) * 0xBF58476D1CE4E5B9L;
+        }
+        for (int cell = 0; cell < this.boxes.length; ++cell)
+        {
+            char c = this.boxes[cell];
+            if (c != 0)
+            {
+                h = (h ^ ((long) cell << 8 | c)) * 0x94D049BB133111EBL;
+            }
+        }
+        h ^= h >>> 31;
+        h *= 0xD6E8FEB86659FD93L;
+        return h ^ (h >>> 32);
+    }
+
+    // The level is shared by all states of a search, so only the agents and boxes are hashed and compared.
+    @Override
+    public int hashCode()
+    {
+        if (this.hash == 0)
+        {
+            this.hash = this.computeHashCode();
         }
         return this.hash;
     }
 
+    int computeHashCode()
+    {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + Arrays.hashCode(this.agentCells);
+        for (int cell = 0; cell < this.boxes.length; ++cell)
+        {
+            char c = this.boxes[cell];
+            if (c != 0)
+            {
+                result = prime * result + cell * c;
+            }
+        }
+        return result;
+    }
+
     @Override
     public boolean equals(Object obj)
     {
@@ -618,34 +1178,31 @@ public class State
             return false;
         }
         State other = (State) obj;
-        return Arrays.equals(this.agentRows, other.agentRows) &&
-               Arrays.equals(this.agentCols, other.agentCols) &&
-               Arrays.equals(this.agentColors, other.agentColors) &&
-               Arrays.deepEquals(this.walls, other.walls) &&
-               Arrays.deepEquals(this.boxes, other.boxes) &&
-               Arrays.equals(this.boxColors, other.boxColors) &&
-               Arrays.deepEquals(this.goals, other.goals);
+        return this.level == other.level &&
+               Arrays.equals(this.agentCells, other.agentCells) &&
+               Arrays.equals(this.boxes, other.boxes);
     }
 
     @Override
     public String toString()
     {
         StringBuilder s = new StringBuilder();
-        for (int row = 0; row < this.walls.length; row++)
+        for (int row = 0; row < this.level.numRows; row++)
         {
-            for (int col = 0; col < this.walls[row].length; col++)
+            for (int col = 0; col < this.level.numCols; col++)
             {
-                if (this.boxes[row][col] > 0)
+                int cell = this.level.cell(row, col);
+                if (this.boxes[cell] > 0)
                 {
-                    s.append(this.boxes[row][col]);
+                    s.append(this.boxes[cell]);
                 }
-                else if (this.walls[row][col])
+                else if (this.level.walls[cell])
                 {
                     s.append("+");
                 }
-                else if (this.agentAt(row, col) != 0)
+                else if (this.agentAt(cell) != 0)
                 {
-                    s.append(this.agentAt(row, col));
+                    s.append(this.agentAt(cell));
                 }
                 else
                 {
@@ -0,0 +1,113 @@
+package searchclient;
+
+import java.util.Arrays;
+
+/*
+    Packs the agents and boxes of the states of one level into a fixed number of longs, for files of states.
+
+    The packing is the agent cells, then the cells of the boxes of each letter in increasing order, each cell in 16
+    bits (32 on levels of more than 65,536 cells). Boxes never appear or disappear, so the number of boxes of each
+    letter is that of the initial state. Two states have the same packing exactly when they are equal.
+*/
+class StatePacker
+{
+    final Level level;
+    final int numAgents;
+    final int numBoxes;
+    // Number of longs per packed state.
+    final int words;
+    // First slot of each letter's boxes, by letter index, and the letter of each slot.
+    private final int[] letterStart = new int[27];
+    private final char[] slotLetters;
+    private final int numCells;
+    private final int bitsPerValue;
+    private final int valuesPerWord;
+    private final int[] nextSlot = new int[26];
+
+    StatePacker(State initialState)
+    {
+        this.level = initialState.level;
+        this.numAgents = initialState.agentCells.length;
+        this.numCells = initialState.boxes.length;
+        int[] counts = new int[26];
+        for (char box : initialState.boxes)
+        {
+            if (box != 0)
+            {
+                ++counts[box - 'A'];
+            }
+        }
+        for (int letter = 0; letter < 26; ++letter)
+        {
+            this.letterStart[letter + 1] = this.letterStart[letter] + counts[letter];
+        }
+        this.numBoxes = this.letterStart[26];
+        this.slotLetters = new char[this.numBoxes];
+        for (int letter = 0; letter < 26; ++letter)
+        {
+            Arrays.fill(this.slotLetters, this.letterStart[letter], this.letterStart[letter + 1],
+                        (char) ('A' + letter));
+        }
+        this.bitsPerValue = this.numCells <= 1 << 16 ? 16 : 32;
+        this.valuesPerWord = 64 / this.bitsPerValue;
+        this.words = Math.max(1, (this.numAgents + this.numBoxes + this.valuesPerWord - 1) / this.valuesPerWord);
+    }
+
+    // Writes the packing of state to words[offset, offset + this.words). Not thread-safe.
+    void pack(State state, long[] words, int offset)
+    {
+        Arrays.fill(words, offset, offset + this.words, 0);
+        for (int agent = 0; agent < this.numAgents; ++agent)
+        {
+            this.putValue(words, offset, agent, state.agentCells[agent]);
+        }
+        // Scanning the cells in order sorts the boxes of each letter by cell.
+        System.arraycopy(this.letterStart, 0, this.nextSlot, 0, 26);
+        char[] boxes = state.boxes;
+        for (int cell = 0; cell < boxes.length; ++cell)
+        {
+            if (boxes[cell] != 0)
+            {
+                this.putValue(words, offset, this.numAgents + this.nextSlot[boxes[cell] - 'A']++, cell);
+            }
+        }
+    }
+
+    int[] agentCells(long[] words, int offset)
+    {
+        int[] agentCells = new int[this.numAgents];
+        for (int agent = 0; agent < this.numAgents; ++agent)
+        {
+            agentCells[agent] = this.getValue(words, offset, agent);
+        }
+        return agentCells;
+    }
+
+    char[] boxes(long[] words, int offset)
+    {
+        char[] boxes = new char[this.numCells];
+        for (int slot = 0; slot < this.numBoxes; ++slot)
+        {
+            boxes[this.getValue(words, offset, this.numAgents + slot)] = this.slotLetters[slot];
+        }
+        return boxes;
+    }
+
+    // An initial state (without parent) with the agents and boxes of the packing.
+    State unpack(long[] words, int offset)
+    {
+        return new State(this.level, this.agentCells(words, offset), this.boxes(words, offset));
+    }
+
+    private void putValue(long[] words, int offset, int index, int value)
+    {
+        int shift = index % this.valuesPerWord * this.bitsPerValue;
+        words[offset + index / this.valuesPerWord] |= ((long) value & ((1L << this.bitsPerValue) - 1)) << shift;
+    }
+
+    private int getValue(long[] words, int offset, int index)
+    {
+        int shift = index % this.valuesPerWord * this.bitsPerValue;
+        return (int) (words[offset + index / this.valuesPerWord] >>> shift & ((1L << this.bitsPerValue) - 1));
+    }
+}
@@ -0,0 +1,300 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Solves a level one goal at a time, in an order derived from the walls, and concatenates the plans.
+
+    A search over every goal at once grows exponentially with the number of goals. Here each stage searches for one
+    more goal with the strategy of the options, on a copy of the level that only has the goals of the stages so far.
+    Boxes on the goals of earlier stages are protected: their cells become walls of the stage's level, so the stage
+    cannot move them and does not search over them. So each stage is about as hard as the level with a single goal.
+    The heuristic of a stage is focused on the box it places, see Level.clearCells and Level.clearDistances.
+
+    Goals are ordered so that filling one does not cut the agents off from the goals still to fill: filling a goal
+    is like walling it, and the goal chosen next is the one that disconnects the fewest others, the farthest from the
+    agents among those. In a dead end, the goal at the far end comes first. Agent goals come after every box goal.
+
+    A stage whose protected boxes are in the way of its goal fails; it is then searched again with the earlier boxes
+    free to move and their goals still to satisfy. The stages search within the time limit of the context, and a
+    protected stage within half of what is left of it, so that the search without protection gets the other half.
+*/
+public class SubgoalSearch
+{
+    public static Action[][] search(State initialState, SearchOptions options, SearchContext context)
+    {
+        context.start();
+        Level level = initialState.level;
+        int[] order = orderGoals(initialState);
+        State state = new State(level, initialState.agentCells.clone(), initialState.boxes.clone());
+        List<Action[]> plan = new ArrayList<>();
+        SearchContext.Outcome outcome = SearchContext.Outcome.SOLVED;
+        for (int stage = 0; stage < order.length; ++stage)
+        {
+            int goal = order[stage];
+            if (isSatisfied(state, goal) && isSatisfied(state, order, stage))
+            {
+                continue;
+            }
+            if (context.verbose)
+            {
+                System.err.format("Subgoal %d of %d: %c at (%d,%d).\n", stage + 1, order.length, level.goals[goal],
+                                  level.row(goal), level.col(goal));
+            }
+            Action[][] stagePlan = searchStage(state, order, stage, true, options, context, plan.size());
+            if (stagePlan == null)
+            {
+                if (context.verbose)
+                {
+                    System.err.println("Subgoal not reached with the earlier boxes in place, searching again with " +
+                                       "them free to move.");
+                }
+                stagePlan = searchStage(state, order, stage, false, options, context, plan.size());
+            }
+            if (stagePlan == null)
+            {
+                outcome = context.outcome;
+                plan = null;
+                break;
+            }
+            for (Action[] jointAction : stagePlan)
+            {
+                state.applyInPlace(jointAction);
+                plan.add(jointAction);
+            }
+        }
+        context.finish(outcome);
+        return plan == null ? null : plan.toArray(new Action[0][]);
+    }
+
+    // Searches from state for the goals of the stages up to stage, and returns the plan, or null with the outcome
+    // left in context. If protect is set, the boxes on the goals of earlier stages become walls.
+    private static Action[][] searchStage(State state, int[] order, int stage, boolean protect, SearchOptions options,
+                                          SearchContext context, int planLength)
+    {
+        Level level = state.level;
+        boolean[] walls = level.walls.clone();
+        char[] goals = new char[level.numCells];
+        char[] boxes = state.boxes.clone();
+        for (int i = 0; i <= stage; ++i)
+        {
+            int goal = order[i];
+            if (protect && i < stage && isBoxGoal(level, goal) && isSatisfied(state, goal))
+            {
+                walls[goal] = true;
+                boxes[goal] = 0;
+            }
+            else
+            {
+                goals[goal] = level.goals[goal];
+            }
+        }
+        Level stageLevel = new Level(level.numRows, level.numCols, walls, goals, level.agentColors, level.boxColors);
+        State stageState = new State(stageLevel, state.agentCells.clone(), boxes);
+        if (isBoxGoal(level, order[stage]))
+        {
+            stageLevel.clearLetter = level.goals[order[stage]];
+            stageLevel.clearCells = clearCells(stageState, order[stage]);
+            stageLevel.clearDistances = new int[level.numCells];
+            flood(stageLevel, stageLevel.walls, new int[]{order[stage]}, stageLevel.clearDistances);
+        }
+
+        SearchContext stageContext = context.child();
+        stageContext.maxStoredStates = context.maxStoredStates;
+        stageContext.memoryGovernor = context.memoryGovernor;
+        stageContext.verbose = context.verbose;
+        if (context.costBound != Integer.MAX_VALUE)
+        {
+            stageContext.costBound = context.costBound - planLength;
+        }
+        if (context.timeLimit > 0)
+        {
+            long left = context.timeLimit - (System.nanoTime() - context.startTime);
+            if (left <= 0)
+            {
+                context.outcome = SearchContext.Outcome.TIMEOUT;
+                return null;
+            }
+            stageContext.timeLimit = protect ? Math.max(left / 2, 1) : left;
+        }
+
+        Action[][] plan = options.searchAtOnce(stageState, stageContext);
+        context.expanded += stageContext.expanded;
+        context.generated += stageContext.generated;
+        context.outcome = stageContext.outcome;
+        return plan;
+    }
+
+    // The cells of a shortest way of the nearest box to goal, and of the nearest agent that can move it to the box,
+    // ignoring other boxes. The heuristic counts the boxes on them, so the search moves them out of the way first.
+    private static int[] clearCells(State state, int goal)
+    {
+        Level level = state.level;
+        char letter = level.goals[goal];
+        int[] toGoal = new int[level.numCells];
+        flood(level, level.walls, new int[]{goal}, toGoal);
+        int box = -1;
+        for (int cell = 0; cell < level.numCells; ++cell)
+        {
+            if (state.boxes[cell] == letter && toGoal[cell] >= 0 && (box == -1 || toGoal[cell] < toGoal[box]))
+            {
+                box = cell;
+            }
+        }
+        if (box == -1)
+        {
+            return null;
+        }
+        int[] toBox = new int[level.numCells];
+        flood(level, level.walls, new int[]{box}, toBox);
+        int agent = -1;
+        for (int a = 0; a < state.agentCells.length; ++a)
+        {
+            int cell = state.agentCells[a];
+            if (level.agentColors[a] == level.boxColors[letter - 'A'] && toBox[cell] >= 0 &&
+                (agent == -1 || toBox[cell] < toBox[agent]))
+            {
+                agent = cell;
+            }
+        }
+        List<Integer> cells = new ArrayList<>();
+        addWay(level, box, toGoal, cells);
+        if (agent != -1)
+        {
+            addWay(level, agent, toBox, cells);
+        }
+        return cells.stream().distinct().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Adds the cells of a shortest way from cell down the distances to their origin.
+    private static void addWay(Level level, int cell, int[] distances, List<Integer> cells)
+    {
+        cells.add(cell);
+        while (distances[cell] > 0)
+        {
+            for (int direction = 0; direction < Level.NUM_DIRECTIONS; ++direction)
+            {
+                int next = level.neighbours[direction][cell];
+                if (next != -1 && distances[next] == distances[cell] - 1)
+                {
+                    cell = next;
+                    break;
+                }
+            }
+            cells.add(cell);
+        }
+    }
+
+    // The goal cells in the order they are solved: box goals so that each disconnects as few of the later ones as
+    // possible from the agents, then agent goals.
+    static int[] orderGoals(State initialState)
+    {
+        Level level = initialState.level;
+        boolean[] walls = level.walls.clone();
+        int[] distances = new int[level.numCells];
+        int[] reached = new int[level.numCells];
+        List<Integer> remaining = new ArrayList<>();
+        int[] order = new int[level.goalCells.length];
+        int ordered = 0;
+        for (int goal : level.goalCells)
+        {
+            if (isBoxGoal(level, goal))
+            {
+                remaining.add(goal);
+            }
+        }
+        while (!remaining.isEmpty())
+        {
+            flood(level, walls, initialState.agentCells, distances);
+            int best = -1;
+            int bestDisconnected = Integer.MAX_VALUE;
+            for (int goal : remaining)
+            {
+                walls[goal] = true;
+                int disconnected = 0;
+                flood(level, walls, initialState.agentCells, reached);
+                for (int other : remaining)
+                {
+                    if (other != goal && reached[other] < 0)
+                    {
+                        ++disconnected;
+                    }
+                }
+                walls[goal] = false;
+                if (disconnected < bestDisconnected ||
+                    (disconnected == bestDisconnected && distances[goal] > distances[best]))
+                {
+                    best = goal;
+                    bestDisconnected = disconnected;
+                }
+            }
+            order[ordered++] = best;
+            walls[best] = true;
+            remaining.remove(Integer.valueOf(best));
+        }
+        for (int goal : level.goalCells)
+        {
+            if (!isBoxGoal(level, goal))
+            {
+                order[ordered++] = goal;
+            }
+        }
+        return order;
+    }
+
+    // Breadth-first distances from the agents to every cell, ignoring boxes, or -1 where walls keep them out.
+    // The cells of the agents themselves count as reached even if walls is set there.
+    private static void flood(Level level, boolean[] walls, int[] agentCells, int[] distances)
+    {
+        Arrays.fill(distances, -1);
+        int[] queue = new int[level.numCells];
+        int tail = 0;
+        for (int cell : agentCells)
+        {
+            if (distances[cell] == -1)
+            {
+                distances[cell] = 0;
+                queue[tail++] = cell;
+            }
+        }
+        for (int head = 0; head < tail; ++head)
+        {
+            int cell = queue[head];
+            for (int direction = 0; direction < Level.NUM_DIRECTIONS; ++direction)
+            {
+                int next = level.neighbours[direction][cell];
+                if (next != -1 && !walls[next] && distances[next] == -1)
+                {
+                    distances[next] = distances[cell] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    private static boolean isBoxGoal(Level level, int cell)
+    {
+        return 'A' <= level.goals[cell] && level.goals[cell] <= 'Z';
+    }
+
+    private static boolean isSatisfied(State state, int cell)
+    {
+        char goal = state.level.goals[cell];
+        return isBoxGoal(state.level, cell) ? state.boxes[cell] == goal : state.agentCells[goal - '0'] == cell;
+    }
+
+    // True if the goals of the stages before stage are satisfied.
+    private static boolean isSatisfied(State state, int[] order, int stage)
+    {
+        for (int i = 0; i < stage; ++i)
+        {
+            if (!isSatisfied(state, order[i]))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}